@@ -0,0 +1,60 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Arbitration cost when many event sources start and stop alerts concurrently.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AlertArbiterBenchmark {
+	@State(Scope.Benchmark)
+	public static class Shared {
+		AlertArbiter mArbiter;
+		final AtomicInteger mNextSource = new AtomicInteger();
+
+		@Setup
+		public void setup() {
+			mArbiter = new AlertArbiter(new AlertLoopPlayer(new NoOpOutput(1000)));
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Source {
+		String mSourceId;
+		int mPriority;
+		SoundSettings mSettings;
+
+		@Setup
+		public void setup(Shared shared) {
+			int index = shared.mNextSource.getAndIncrement();
+			mSourceId = "source-" + index;
+			mPriority = index % 3 * AlertArbiter.PRIORITY_NORMAL;
+			mSettings = new SoundSettings(0.5f, 1.0f, 1.0f, index % 2 == 0, 5);
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void singleSource(Shared shared, Source source) {
+		shared.mArbiter.startSound(source.mPriority, source.mSourceId, source.mSettings);
+		shared.mArbiter.stopSound(source.mSourceId);
+	}
+
+	@Benchmark
+	@Threads(16)
+	public void manySources(Shared shared, Source source) {
+		shared.mArbiter.startSound(source.mPriority, source.mSourceId, source.mSettings);
+		shared.mArbiter.stopSound(source.mSourceId);
+	}
+}
@@ -0,0 +1,53 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Start/stop throughput of {@link AlertLoopPlayer}, including scheduling and cancelling the
+ * completion check each start leaves behind.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AlertLoopPlayerBenchmark {
+	private AlertLoopPlayer mPlayer;
+	private SoundSettings mLooping;
+
+	@Setup
+	public void setup() {
+		mPlayer = new AlertLoopPlayer(new NoOpOutput(1000));
+		mLooping = new SoundSettings(0.5f, 1.0f, 1.0f, true, 10);
+	}
+
+	@TearDown
+	public void tearDown() {
+		mPlayer.stopSound();
+	}
+
+	@Benchmark
+	public void startStop() {
+		mPlayer.startSound(mLooping);
+		mPlayer.stopSound();
+	}
+
+	@Benchmark
+	public void retrigger() {
+		mPlayer.startSound(mLooping);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void retriggerContended() {
+		mPlayer.startSound(mLooping);
+	}
+}
@@ -0,0 +1,48 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of superseding a generation and scheduling its next wake-up, the work every alert
+ * retrigger does on the {@link AlertScheduler}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AlertSchedulerBenchmark {
+	private static final long DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final Runnable NOTHING = () -> {
+	};
+
+	private AlertScheduler.Channel mChannel;
+
+	@Setup
+	public void setup() {
+		mChannel = AlertScheduler.getInstance().newChannel();
+	}
+
+	@TearDown
+	public void tearDown() {
+		mChannel.cancel();
+	}
+
+	@Benchmark
+	public boolean beginAndSchedule() {
+		long generation = mChannel.begin();
+		return mChannel.scheduleAt(generation, System.nanoTime() + DELAY_NANOS, NOTHING);
+	}
+
+	@Benchmark
+	public boolean isCurrent() {
+		return mChannel.isCurrent(42);
+	}
+}
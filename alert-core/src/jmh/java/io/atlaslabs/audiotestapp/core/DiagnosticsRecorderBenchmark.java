@@ -0,0 +1,30 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording a diagnostics sample while audio plays. Run with {@code -prof gc} to confirm
+ * recording does not allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DiagnosticsRecorderBenchmark {
+	private final DiagnosticsRecorder mRecorder = new DiagnosticsRecorder(1024, 0,
+			"usage", "content", "flags", "stream", "mode", "ringer", "muted", "music", "playing", "priority");
+	private final int[] mSample = new int[mRecorder.getColumnCount()];
+	private long mNanos = 0;
+
+	@Benchmark
+	public void record() {
+		mSample[0]++;
+		mRecorder.record(mNanos++, mSample);
+	}
+}
@@ -0,0 +1,34 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording a latency sample, which happens on every alert start and stop.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LatencyHistogramBenchmark {
+	private final LatencyHistogram mHistogram = new LatencyHistogram("benchmark");
+	private long mValue = 12345;
+
+	@Benchmark
+	public void record() {
+		mValue = mValue * 6364136223846793005L + 1442695040888963407L;
+		mHistogram.record(mValue >>> 34);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void recordContended() {
+		mHistogram.record(System.nanoTime() & 0xFFFFFFFL);
+	}
+}
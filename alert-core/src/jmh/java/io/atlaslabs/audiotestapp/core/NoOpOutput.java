@@ -0,0 +1,45 @@
+package io.atlaslabs.audiotestapp.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Output that makes no audio calls, so benchmarks measure only the alert core's own overhead.
+ */
+final class NoOpOutput implements AlertLoopPlayer.Output {
+	private final long mClipDurationNanos;
+	private final AtomicLong mPlays = new AtomicLong();
+
+	NoOpOutput(long clipDurationMs) {
+		mClipDurationNanos = TimeUnit.MILLISECONDS.toNanos(clipDurationMs);
+	}
+
+	@Override
+	public void prepare() {
+	}
+
+	@Override
+	public boolean start(SoundSettings settings) {
+		mPlays.incrementAndGet();
+		return true;
+	}
+
+	@Override
+	public void replay() {
+		mPlays.incrementAndGet();
+	}
+
+	@Override
+	public boolean isPlaying() {
+		return false;
+	}
+
+	@Override
+	public void stop() {
+	}
+
+	@Override
+	public long getClipDurationNanos() {
+		return mClipDurationNanos;
+	}
+}
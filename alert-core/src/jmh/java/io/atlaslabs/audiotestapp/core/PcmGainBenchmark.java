@@ -0,0 +1,49 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of scaling one buffer of alert samples. Run with {@code -prof gc} to confirm nothing is
+ * allocated per buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PcmGainBenchmark {
+	@Param({"1024", "96000"})
+	public int mSamples;
+
+	private short[] mSource;
+	private short[] mScaled;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		mSource = new short[mSamples];
+		mScaled = new short[mSamples];
+		for (int i = 0; i < mSamples; i++)
+			mSource[i] = (short) random.nextInt();
+	}
+
+	@Benchmark
+	public short[] attenuate() {
+		PcmGain.apply(mSource, 0, mScaled, 0, mSamples, 0.3f);
+		return mScaled;
+	}
+
+	@Benchmark
+	public short[] boostWithClipping() {
+		PcmGain.apply(mSource, 0, mScaled, 0, mSamples, 4f);
+		return mScaled;
+	}
+}
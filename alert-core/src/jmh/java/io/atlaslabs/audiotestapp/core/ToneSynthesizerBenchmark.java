@@ -0,0 +1,43 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of synthesizing one output buffer of each preset tone, as when streaming a tone instead of
+ * rendering it to a clip. Run with {@code -prof gc} to confirm rendering does not allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ToneSynthesizerBenchmark {
+	private static final int SAMPLE_RATE = 48000;
+	private static final int BUFFER_FRAMES = 1024;
+
+	@Param({"woop", "chime", "beeps"})
+	public String mTone;
+
+	private final short[] mBuffer = new short[BUFFER_FRAMES];
+	private ToneSynthesizer mSynthesizer;
+
+	@Setup
+	public void setup() {
+		mSynthesizer = new ToneSynthesizer(ToneSpec.parse(mTone), SAMPLE_RATE);
+	}
+
+	@Benchmark
+	public short[] renderBuffer() {
+		if (mSynthesizer.render(mBuffer, 0, BUFFER_FRAMES) < BUFFER_FRAMES)
+			mSynthesizer.reset();
+
+		return mBuffer;
+	}
+}
@@ -0,0 +1,248 @@
+package io.atlaslabs.audiotestapp.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Arbitrates between alert requests from several event sources in front of a single
+ * {@link IAlertPlayer}. Each request carries a priority and a source ID; the highest priority
+ * request plays (the most recent one wins a tie), and a request that is preempted stays pending.
+ * When it wins again, a looping alert resumes on its original loop schedule instead of restarting.
+ * A one-shot alert is dropped once its clip would have finished, or after
+ * {@link #UNKNOWN_ONE_SHOT_TIMEOUT_NANOS} if the player doesn't know the clip's duration.
+ * <p>
+ * Callers never block: requests are queued and applied by whichever caller finds the arbiter
+ * idle (queue-drain), so concurrent callers only pay for an enqueue. A draining caller applies at
+ * most {@link #MAX_DRAIN_BATCH} commands; anything left over is drained on the {@link AlertScheduler}
+ * thread, so a steady stream of requests from other threads cannot hold one caller hostage.
+ * The player itself is only called on the scheduler thread, in the order the arbiter decided.
+ */
+public class AlertArbiter implements IAlertPlayer {
+	public static final int PRIORITY_LOW = 0;
+	public static final int PRIORITY_NORMAL = 50;
+	public static final int PRIORITY_CRITICAL = 100;
+	public static final String DEFAULT_SOURCE_ID = "default";
+	/**
+	 * How long a one-shot is kept when the player reports no clip duration; long enough for any alert clip
+	 */
+	public static final long UNKNOWN_ONE_SHOT_TIMEOUT_NANOS = 30 * 1000000000L;
+	// Commands a caller drains before handing the rest to the scheduler thread
+	private static final int MAX_DRAIN_BATCH = 64;
+
+	private final IAlertPlayer mPlayer;
+	private final AlertScheduler.Channel mChannel = AlertScheduler.getInstance().newChannel();
+	private final Queue<Runnable> mCommands = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger mWip = new AtomicInteger();
+	private final AtomicLong mSequence = new AtomicLong();
+
+	// Owned by the draining thread
+	private final Map<String, AlertRequest> mRequests = new HashMap<>();
+	private volatile AlertRequest mActive = null;
+
+	public AlertArbiter(IAlertPlayer player) {
+		mPlayer = player;
+	}
+
+	@Override
+	public void prepare() {
+		mPlayer.prepare();
+	}
+
+	@Override
+	public void startSound(SoundSettings soundSettings) {
+		startSound(PRIORITY_NORMAL, DEFAULT_SOURCE_ID, soundSettings);
+	}
+
+	/**
+	 * Requests an alert on behalf of {@code sourceId}, replacing any earlier request from the same source.
+	 */
+	public void startSound(int priority, String sourceId, SoundSettings soundSettings) {
+		AlertRequest request = new AlertRequest(priority, sourceId, soundSettings, mSequence.incrementAndGet());
+		submit(() -> mRequests.put(request.mSourceId, request));
+	}
+
+	/**
+	 * Stops every source's alert.
+	 */
+	@Override
+	public void stopSound() {
+		submit(mRequests::clear);
+	}
+
+	/**
+	 * Withdraws the request from {@code sourceId}; a preempted request from another source may resume.
+	 */
+	public void stopSound(String sourceId) {
+		submit(() -> mRequests.remove(sourceId));
+	}
+
+	@Override
+	public long getClipDurationNanos() {
+		return mPlayer.getClipDurationNanos();
+	}
+
+	@Override
+	public AlertMetrics getMetrics() {
+		return mPlayer.getMetrics();
+	}
+
+	/**
+	 * Returns the request currently allowed to play, or null. Only a hint when called
+	 * concurrently with other requests.
+	 */
+	public AlertRequest getActiveRequest() {
+		return mActive;
+	}
+
+	private void submit(Runnable command) {
+		mCommands.add(command);
+		drain();
+	}
+
+	private void drain() {
+		if (mWip.getAndIncrement() != 0)
+			return;
+
+		drainLoop(1);
+	}
+
+	private void drainLoop(int missed) {
+		do {
+			int budget = MAX_DRAIN_BATCH;
+			Runnable command;
+			while ((command = mCommands.poll()) != null) {
+				command.run();
+
+				if (--budget == 0) {
+					arbitrate();
+					// mWip stays non-zero, so the scheduler thread takes over as the only drainer
+					AlertScheduler.getInstance().execute(() -> drainLoop(mWip.get()));
+					return;
+				}
+			}
+
+			arbitrate();
+			missed = mWip.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	private void arbitrate() {
+		AlertRequest winner = selectWinner();
+
+		// A preempted one-shot has nothing left to resume
+		while (winner != null && winner != mActive && winner.mScheduleOriginNanos != 0 && !winner.mSettings.getLooping()) {
+			mRequests.remove(winner.mSourceId);
+			winner = selectWinner();
+		}
+
+		if (winner == mActive)
+			return;
+
+		mActive = winner;
+		long generation = mChannel.begin();
+
+		if (winner == null) {
+			onPlayerThread(mPlayer::stopSound);
+			return;
+		}
+
+		AlertRequest request = winner;
+		long now = System.nanoTime();
+		if (request.mScheduleOriginNanos == 0) {
+			request.mScheduleOriginNanos = now;
+			onPlayerThread(() -> {
+				mPlayer.startSound(request.mSettings);
+
+				if (!request.mSettings.getLooping()) {
+					// One-shots expire when their clip ends, letting a preempted request resume. Expiring one
+					// of unknown length at once would let a preempted request cut it off
+					long clipNanos = mPlayer.getClipDurationNanos();
+					mChannel.scheduleAt(generation, now + (clipNanos > 0 ? clipNanos : UNKNOWN_ONE_SHOT_TIMEOUT_NANOS), () -> submit(() -> {
+						if (mRequests.get(request.mSourceId) == request)
+							mRequests.remove(request.mSourceId);
+					}));
+				}
+			});
+			return;
+		}
+
+		onPlayerThread(() -> {
+			// Without the clip's duration the loop's schedule is unknown, so it restarts now
+			long clipNanos = mPlayer.getClipDurationNanos();
+			if (clipNanos <= 0) {
+				mPlayer.startSound(request.mSettings);
+				return;
+			}
+
+			long period = clipNanos + request.getIntervalNanos();
+
+			// Resume on the preempted loop's schedule: silent until its next iteration is due
+			long elapsed = now - request.mScheduleOriginNanos;
+			long nextIterationNanos = request.mScheduleOriginNanos + ((elapsed + period - 1) / period) * period;
+			mPlayer.stopSound();
+
+			mChannel.scheduleAt(generation, nextIterationNanos, () -> submit(() -> {
+				if (mActive == request)
+					onPlayerThread(() -> mPlayer.startSound(request.mSettings));
+			}));
+		});
+	}
+
+	/**
+	 * Runs a player call on the {@link AlertScheduler} thread. It is a single thread, so calls run in
+	 * the order they were decided, and a player that blocks never stalls the draining caller.
+	 */
+	private static void onPlayerThread(Runnable call) {
+		AlertScheduler.getInstance().execute(call);
+	}
+
+	private AlertRequest selectWinner() {
+		AlertRequest winner = null;
+		for (AlertRequest request : mRequests.values()) {
+			if (winner == null || request.mPriority > winner.mPriority
+					|| (request.mPriority == winner.mPriority && request.mSequence > winner.mSequence))
+				winner = request;
+		}
+
+		return winner;
+	}
+
+	/**
+	 * One source's alert request. Immutable apart from the schedule origin, which is only touched while draining.
+	 */
+	public static final class AlertRequest {
+		private final int mPriority;
+		private final String mSourceId;
+		private final SoundSettings mSettings;
+		private final long mSequence;
+		// System.nanoTime() of the first play; 0 until the request first wins
+		private long mScheduleOriginNanos = 0;
+
+		AlertRequest(int priority, String sourceId, SoundSettings settings, long sequence) {
+			mPriority = priority;
+			mSourceId = sourceId != null ? sourceId : DEFAULT_SOURCE_ID;
+			mSettings = settings;
+			mSequence = sequence;
+		}
+
+		public int getPriority() {
+			return mPriority;
+		}
+
+		public String getSourceId() {
+			return mSourceId;
+		}
+
+		public SoundSettings getSettings() {
+			return mSettings;
+		}
+
+		long getIntervalNanos() {
+			return mSettings.getLooping() ? mSettings.getInterval() * 1000000000L : 0;
+		}
+	}
+}
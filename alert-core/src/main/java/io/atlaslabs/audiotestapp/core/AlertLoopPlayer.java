@@ -0,0 +1,197 @@
+package io.atlaslabs.audiotestapp.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Platform-independent alert player: owns the play / completion / interval loop, playback state
+ * and metrics, and drives an {@link Output} that performs the actual audio calls.
+ * <p>
+ * A play is assumed to end after {@link Output#getClipDurationNanos()}; the output is only asked
+ * whether it is still playing once that time has passed. Each loop iteration is scheduled from
+ * the previous nominal deadline, so the interval does not drift.
+ * <p>
+ * Start, stop and loop transitions go through a {@link PlaybackStateMachine}. Calls into the output
+ * are made under one lock and only after the matching transition succeeded, so a loop iteration
+ * that lost a race with {@link #stopSound()} can never play after the output was stopped. Starts,
+ * stops and loop iterations therefore wait for each other; only state queries are lock-free.
+ */
+public class AlertLoopPlayer implements IAlertPlayer {
+	// Only used when the clip duration is unknown or the output runs past it
+	private static final long COMPLETION_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+	private final Output mOutput;
+	private final Object mOutputLock = new Object();
+	private final PlaybackStateMachine mState = new PlaybackStateMachine();
+	private final AlertScheduler.Channel mChannel = AlertScheduler.getInstance().newChannel();
+	private final AlertMetrics mMetrics = new AlertMetrics();
+
+	public AlertLoopPlayer(Output output) {
+		mOutput = output;
+	}
+
+	/**
+	 * Audio calls for one alert clip. Methods are called from the caller's thread or the
+	 * {@link AlertScheduler} thread, but never concurrently with each other.
+	 */
+	public interface Output {
+		/**
+		 * Resolves sources and opens the output so that {@link #start} does no setup. Must be
+		 * idempotent; {@link #start} prepares on demand if this was never called.
+		 */
+		void prepare();
+
+		/**
+		 * Prepares the output for {@code settings} (e.g. volume) and starts the first play.
+		 *
+		 * @return false if nothing was started
+		 */
+		boolean start(SoundSettings settings);
+
+		/**
+		 * Plays the clip again from the beginning for the next loop iteration.
+		 */
+		void replay();
+
+		/**
+		 * True while the clip is still audible. Only consulted once its nominal duration has passed.
+		 */
+		boolean isPlaying();
+
+		/**
+		 * Silences output and undoes anything {@link #start} changed. Also called when a one-shot ends.
+		 */
+		void stop();
+
+		/**
+		 * Length of one play in nanoseconds, or 0 if unknown
+		 */
+		long getClipDurationNanos();
+	}
+
+	@Override
+	public void prepare() {
+		synchronized (mOutputLock) {
+			mOutput.prepare();
+		}
+	}
+
+	@Override
+	public void startSound(SoundSettings soundSettings) {
+		long requestedNanos = System.nanoTime();
+		// Supersedes any loop still scheduled for a previous start
+		long generation = mState.begin();
+		mChannel.dropPending();
+
+		if (!soundSettings.getIsEnabled() || soundSettings.getVolume() == 0) {
+			mState.transition(generation, PlaybackStateMachine.STARTING, PlaybackStateMachine.IDLE);
+			return;
+		}
+
+		// Settings are copied so a caller changing them cannot alter a running loop
+		SoundSettings settings = new SoundSettings(soundSettings);
+
+		synchronized (mOutputLock) {
+			if (!mState.isCurrent(generation))
+				return;
+
+			if (!mOutput.start(settings)) {
+				mState.transition(generation, PlaybackStateMachine.STARTING, PlaybackStateMachine.IDLE);
+				return;
+			}
+
+			mState.transition(generation, PlaybackStateMachine.STARTING, PlaybackStateMachine.PLAYING);
+		}
+
+		mMetrics.recordStart(requestedNanos);
+		scheduleCompletionCheck(generation, System.nanoTime(), settings);
+	}
+
+	@Override
+	public void stopSound() {
+		long requestedNanos = System.nanoTime();
+		long generation = mState.stop();
+		mChannel.dropPending();
+
+		synchronized (mOutputLock) {
+			mOutput.stop();
+		}
+
+		mState.transition(generation, PlaybackStateMachine.STOPPING, PlaybackStateMachine.IDLE);
+		mMetrics.recordStop(requestedNanos);
+	}
+
+	@Override
+	public long getClipDurationNanos() {
+		return mOutput.getClipDurationNanos();
+	}
+
+	@Override
+	public AlertMetrics getMetrics() {
+		return mMetrics;
+	}
+
+	/**
+	 * Current state, one of the {@link PlaybackStateMachine} constants
+	 */
+	public int getState() {
+		return mState.getState();
+	}
+
+	/**
+	 * Schedules a single wake-up for when the clip started at {@code playStartNanos} is due to end.
+	 * Only if the clip length is unknown, or the output overruns it, is the check repeated.
+	 */
+	private void scheduleCompletionCheck(long generation, long playStartNanos, SoundSettings settings) {
+		long clipNanos = mOutput.getClipDurationNanos();
+		long dueNanos = clipNanos > 0 ? playStartNanos + clipNanos : System.nanoTime() + COMPLETION_RECHECK_NANOS;
+
+		schedule(generation, dueNanos, () -> onCompletionDue(generation, dueNanos, settings));
+	}
+
+	private void onCompletionDue(long generation, long dueNanos, SoundSettings settings) {
+		synchronized (mOutputLock) {
+			if (!mState.isCurrent(generation))
+				return;
+
+			if (mOutput.isPlaying()) {
+				long recheckNanos = System.nanoTime() + COMPLETION_RECHECK_NANOS;
+				schedule(generation, recheckNanos, () -> onCompletionDue(generation, recheckNanos, settings));
+				return;
+			}
+
+			if (!settings.getLooping()) {
+				if (mState.transition(generation, PlaybackStateMachine.PLAYING, PlaybackStateMachine.STOPPING)) {
+					mOutput.stop();
+					mState.transition(generation, PlaybackStateMachine.STOPPING, PlaybackStateMachine.IDLE);
+				}
+				return;
+			}
+
+			if (!mState.transition(generation, PlaybackStateMachine.PLAYING, PlaybackStateMachine.WAITING_INTERVAL))
+				return;
+		}
+
+		long nextStartNanos = dueNanos + TimeUnit.SECONDS.toNanos(settings.getInterval());
+		schedule(generation, nextStartNanos, () -> {
+			synchronized (mOutputLock) {
+				if (!mState.transition(generation, PlaybackStateMachine.WAITING_INTERVAL, PlaybackStateMachine.PLAYING))
+					return;
+
+				mMetrics.recordLoopIteration(nextStartNanos);
+				mOutput.replay();
+			}
+
+			scheduleCompletionCheck(generation, nextStartNanos, settings);
+		});
+	}
+
+	private void schedule(long generation, long deadlineNanos, Runnable task) {
+		if (!mState.isCurrent(generation))
+			return;
+
+		mChannel.scheduleUngated(deadlineNanos, () -> {
+			if (mState.isCurrent(generation))
+				task.run();
+		});
+	}
+}
@@ -0,0 +1,58 @@
+package io.atlaslabs.audiotestapp.core;
+
+/**
+ * Latency instrumentation for one {@link IAlertPlayer}:
+ * - start call: from startSound() until it returned, having asked the platform to start output. Not
+ *   when audio was first heard; that is later by the output latency, and for asynchronous players more
+ * - stop: from stopSound() until output is silenced
+ * - loop jitter: how late each loop iteration started relative to its scheduled time
+ */
+public final class AlertMetrics {
+	private final LatencyHistogram mStartLatency = new LatencyHistogram("start call latency");
+	private final LatencyHistogram mStopLatency = new LatencyHistogram("stop latency");
+	private final LatencyHistogram mLoopJitter = new LatencyHistogram("loop jitter");
+
+	public void recordStart(long requestedNanos) {
+		mStartLatency.record(System.nanoTime() - requestedNanos);
+	}
+
+	public void recordStop(long requestedNanos) {
+		mStopLatency.record(System.nanoTime() - requestedNanos);
+	}
+
+	/**
+	 * @param scheduledNanos the {@link System#nanoTime()} deadline the iteration was due to start at
+	 */
+	public void recordLoopIteration(long scheduledNanos) {
+		recordLoopIteration(scheduledNanos, System.nanoTime());
+	}
+
+	/**
+	 * For players that learn when an iteration actually started after the fact, e.g. from output timestamps
+	 */
+	public void recordLoopIteration(long scheduledNanos, long startedNanos) {
+		mLoopJitter.record(Math.abs(startedNanos - scheduledNanos));
+	}
+
+	public LatencyHistogram getStartLatency() {
+		return mStartLatency;
+	}
+
+	public LatencyHistogram getStopLatency() {
+		return mStopLatency;
+	}
+
+	public LatencyHistogram getLoopJitter() {
+		return mLoopJitter;
+	}
+
+	public void reset() {
+		mStartLatency.reset();
+		mStopLatency.reset();
+		mLoopJitter.reset();
+	}
+
+	public String dump() {
+		return mStartLatency.summary() + "\n" + mStopLatency.summary() + "\n" + mLoopJitter.summary();
+	}
+}
@@ -0,0 +1,154 @@
+package io.atlaslabs.audiotestapp.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single long-lived scheduler that owns every alert loop iteration, completion check and
+ * interval wait. Players never create their own threads; they open a {@link Channel} and
+ * schedule work against a generation token. Starting a new generation on a channel cancels
+ * everything scheduled under the previous one, so superseded plays never wake up.
+ * <p>
+ * Deadlines are absolute {@link System#nanoTime()} values, so a loop that computes each
+ * iteration from the previous nominal deadline does not accumulate drift.
+ */
+public final class AlertScheduler {
+	private static final String THREAD_NAME = "AlertScheduler";
+	private static final AlertScheduler mInstance = new AlertScheduler();
+
+	private final ScheduledThreadPoolExecutor mExecutor;
+
+	private AlertScheduler() {
+		mExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, THREAD_NAME);
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// Cancelled (superseded) work is dropped from the queue immediately instead of waking the thread later
+		mExecutor.setRemoveOnCancelPolicy(true);
+	}
+
+	public static AlertScheduler getInstance() {
+		return mInstance;
+	}
+
+	/**
+	 * Runs {@code task} on the scheduler thread as soon as possible, outside of any channel.
+	 */
+	public void execute(Runnable task) {
+		mExecutor.execute(task);
+	}
+
+	/**
+	 * Creates an independent channel. Each player owns one, so players do not cancel each other.
+	 */
+	public Channel newChannel() {
+		return new Channel();
+	}
+
+	/**
+	 * Sequence of scheduled work belonging to one player. Only work tagged with the current
+	 * generation runs.
+	 */
+	public final class Channel {
+		private final AtomicLong mGeneration = new AtomicLong();
+		private final Queue<ScheduledFuture<?>> mPending = new ConcurrentLinkedQueue<>();
+
+		private Channel() {
+		}
+
+		/**
+		 * Supersedes all earlier work on this channel and returns the token for the new generation.
+		 */
+		public long begin() {
+			long generation = mGeneration.incrementAndGet();
+			cancelPending();
+			return generation;
+		}
+
+		/**
+		 * Supersedes all earlier work without starting anything new.
+		 */
+		public void cancel() {
+			mGeneration.incrementAndGet();
+			cancelPending();
+		}
+
+		public boolean isCurrent(long generation) {
+			return mGeneration.get() == generation;
+		}
+
+		/**
+		 * Runs {@code task} on the scheduler thread as soon as possible if {@code generation} is still current.
+		 */
+		public boolean execute(long generation, Runnable task) {
+			return scheduleAt(generation, System.nanoTime(), task);
+		}
+
+		/**
+		 * Runs {@code task} at the absolute {@link System#nanoTime()} deadline if {@code generation}
+		 * is still current at that time.
+		 *
+		 * @return false if the generation was already superseded and nothing was scheduled
+		 */
+		public boolean scheduleAt(long generation, long deadlineNanos, Runnable task) {
+			if (!isCurrent(generation))
+				return false;
+
+			ScheduledFuture<?> future = schedule(deadlineNanos, () -> {
+				if (isCurrent(generation))
+					task.run();
+			});
+
+			// Lost a race with begin()/cancel(); make sure the stale task does not linger
+			if (!isCurrent(generation)) {
+				future.cancel(false);
+				return false;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Runs {@code task} at the absolute {@link System#nanoTime()} deadline unless it is dropped by
+		 * {@link #dropPending()}, {@link #begin()} or {@link #cancel()}. For callers that gate their work on
+		 * their own generation, e.g. a {@link PlaybackStateMachine}.
+		 */
+		public void scheduleUngated(long deadlineNanos, Runnable task) {
+			schedule(deadlineNanos, task);
+		}
+
+		/**
+		 * Drops everything scheduled so far without starting a new generation.
+		 */
+		public void dropPending() {
+			cancelPending();
+		}
+
+		private ScheduledFuture<?> schedule(long deadlineNanos, Runnable task) {
+			long delay = Math.max(0, deadlineNanos - System.nanoTime());
+			ScheduledFuture<?> future = mExecutor.schedule(task, delay, TimeUnit.NANOSECONDS);
+
+			mPending.add(future);
+			purgeDone();
+			return future;
+		}
+
+		private void cancelPending() {
+			ScheduledFuture<?> future;
+			while ((future = mPending.poll()) != null)
+				future.cancel(false);
+		}
+
+		private void purgeDone() {
+			ScheduledFuture<?> head;
+			while ((head = mPending.peek()) != null && head.isDone())
+				mPending.remove(head);
+		}
+	}
+}
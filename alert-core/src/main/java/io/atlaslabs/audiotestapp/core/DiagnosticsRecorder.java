@@ -0,0 +1,128 @@
+package io.atlaslabs.audiotestapp.core;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Fixed-size ring buffer of diagnostic samples, each a timestamp and one int per named column.
+ * Samples are copied into preallocated primitive arrays, so recording never allocates, and are
+ * only formatted when dumped; recording can therefore stay on while timing-sensitive audio plays.
+ * Samples arriving faster than the sampling interval are skipped, and once the buffer is full the
+ * oldest samples are overwritten.
+ */
+public final class DiagnosticsRecorder {
+	private final String[] mColumns;
+	private final int mCapacity;
+	private final long mIntervalNanos;
+	private final long[] mTimes;
+	private final int[] mValues;
+
+	// Total samples ever recorded; the next slot is mCount % mCapacity
+	private long mCount = 0;
+	private long mLastSampleNanos = 0;
+
+	/**
+	 * @param capacity      samples retained
+	 * @param intervalNanos minimum time between samples
+	 * @param columns       names of the values in each sample
+	 */
+	public DiagnosticsRecorder(int capacity, long intervalNanos, String... columns) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+
+		mColumns = columns.clone();
+		mCapacity = capacity;
+		mIntervalNanos = intervalNanos;
+		mTimes = new long[capacity];
+		mValues = new int[capacity * columns.length];
+	}
+
+	public int getColumnCount() {
+		return mColumns.length;
+	}
+
+	/**
+	 * True if a sample taken at {@code nowNanos} would be recorded. Check before gathering the
+	 * values, so skipped samples cost nothing.
+	 */
+	public synchronized boolean isSampleDue(long nowNanos) {
+		return mCount == 0 || nowNanos - mLastSampleNanos >= mIntervalNanos;
+	}
+
+	/**
+	 * Records a sample if one is due.
+	 *
+	 * @param nowNanos {@link System#nanoTime()} of the sample
+	 * @param values   one value per column; copied, so the caller may reuse the array
+	 * @return false if the sample was skipped
+	 */
+	public synchronized boolean record(long nowNanos, int[] values) {
+		if (values.length != mColumns.length)
+			throw new IllegalArgumentException("Expected " + mColumns.length + " values, got " + values.length);
+
+		if (!isSampleDue(nowNanos))
+			return false;
+
+		int slot = (int) (mCount % mCapacity);
+		mTimes[slot] = nowNanos;
+		System.arraycopy(values, 0, mValues, slot * mColumns.length, mColumns.length);
+		mCount++;
+		mLastSampleNanos = nowNanos;
+		return true;
+	}
+
+	/**
+	 * Samples currently retained
+	 */
+	public synchronized int size() {
+		return (int) Math.min(mCount, mCapacity);
+	}
+
+	/**
+	 * Samples recorded and then overwritten before being dumped
+	 */
+	public synchronized long getOverwrittenCount() {
+		return Math.max(0, mCount - mCapacity);
+	}
+
+	public synchronized void clear() {
+		mCount = 0;
+		mLastSampleNanos = 0;
+	}
+
+	/**
+	 * Writes a CSV header and one line per retained sample, oldest first. Times are in milliseconds
+	 * relative to the newest sample. The samples are copied first, so recording is not blocked
+	 * while formatting.
+	 */
+	public void dump(Appendable out) throws IOException {
+		int size;
+		long first;
+		long[] times;
+		int[] values;
+
+		synchronized (this) {
+			size = size();
+			first = mCount - size;
+			times = mTimes.clone();
+			values = mValues.clone();
+		}
+
+		out.append("time_ms");
+		for (String column : mColumns)
+			out.append(',').append(column);
+		out.append('\n');
+
+		if (size == 0)
+			return;
+
+		long newestNanos = times[(int) ((first + size - 1) % mCapacity)];
+		for (long i = first; i < first + size; i++) {
+			int slot = (int) (i % mCapacity);
+			out.append(String.format(Locale.US, "%.1f", (times[slot] - newestNanos) / 1e6));
+			for (int column = 0; column < mColumns.length; column++)
+				out.append(',').append(Integer.toString(values[slot * mColumns.length + column]));
+			out.append('\n');
+		}
+	}
+}
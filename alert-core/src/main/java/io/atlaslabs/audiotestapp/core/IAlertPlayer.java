@@ -0,0 +1,22 @@
+package io.atlaslabs.audiotestapp.core;
+
+public interface IAlertPlayer {
+	/**
+	 * Does the one-time setup the first start would otherwise pay for (resolving sources, opening
+	 * the output). Blocks, so call off the main thread. Optional; starting prepares on demand.
+	 */
+	void prepare();
+
+	void startSound(SoundSettings soundSettings);
+	void stopSound();
+
+	/**
+	 * Length of one play of the alert clip in nanoseconds, or 0 if unknown
+	 */
+	long getClipDurationNanos();
+
+	/**
+	 * Start/stop latency and loop jitter recorded by this player
+	 */
+	AlertMetrics getMetrics();
+}
@@ -0,0 +1,107 @@
+package io.atlaslabs.audiotestapp.core;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory latency histogram with log-linear buckets: values are kept in microseconds,
+ * with 16 linear sub-buckets per power of two (about 6% resolution) from 1 us to over a day.
+ * Recording is wait-free and does not allocate, so it is safe on the audio start path.
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	// Values above 2^38 us (~76 hours) are clamped into the last bucket
+	private static final int MAX_SHIFT = 33;
+	private static final int BUCKET_COUNT = (MAX_SHIFT + 2) * SUB_BUCKET_COUNT;
+	private static final long MAX_TRACKABLE_MICROS = ((2L * SUB_BUCKET_COUNT) << MAX_SHIFT) - 1;
+
+	private final String mName;
+	private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong mTotalCount = new AtomicLong();
+	private final AtomicLong mMaxNanos = new AtomicLong();
+
+	public LatencyHistogram(String name) {
+		mName = name;
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	public void record(long nanos) {
+		long clamped = Math.max(0, nanos);
+		mCounts.incrementAndGet(bucketIndex(TimeUnit.NANOSECONDS.toMicros(clamped)));
+		mTotalCount.incrementAndGet();
+
+		long max;
+		while (clamped > (max = mMaxNanos.get()) && !mMaxNanos.compareAndSet(max, clamped)) {
+			// Retry until this value is recorded or a larger one wins
+		}
+	}
+
+	public long getCount() {
+		return mTotalCount.get();
+	}
+
+	public long getMaxNanos() {
+		return mMaxNanos.get();
+	}
+
+	/**
+	 * Returns the value at {@code percentile} (0-100) in nanoseconds, reported as the upper
+	 * bound of its bucket; 0 if nothing has been recorded.
+	 */
+	public long getPercentileNanos(double percentile) {
+		long total = mTotalCount.get();
+		if (total == 0)
+			return 0;
+
+		long target = Math.max(1, (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += mCounts.get(i);
+			if (seen >= target)
+				return Math.min(TimeUnit.MICROSECONDS.toNanos(bucketUpperBound(i)), mMaxNanos.get());
+		}
+
+		return mMaxNanos.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++)
+			mCounts.set(i, 0);
+
+		mTotalCount.set(0);
+		mMaxNanos.set(0);
+	}
+
+	/**
+	 * One-line summary with p50, p99 and max in milliseconds
+	 */
+	public String summary() {
+		return String.format(Locale.US, "%s: n=%d, p50=%.2f ms, p99=%.2f ms, max=%.2f ms", mName, getCount(),
+				getPercentileNanos(50) / 1e6, getPercentileNanos(99) / 1e6, getMaxNanos() / 1e6);
+	}
+
+	static int bucketIndex(long micros) {
+		long value = Math.min(micros, MAX_TRACKABLE_MICROS);
+		if (value < SUB_BUCKET_COUNT)
+			return (int) value;
+
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+		return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKET_COUNT)
+			return index;
+
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,115 @@
+package io.atlaslabs.audiotestapp.core;
+
+import java.util.Arrays;
+
+/**
+ * Renders an alert clip, optionally followed by a silent interval and repeated, into buffers for
+ * a streaming output. Because the silence is rendered as samples, every repetition starts exactly
+ * one period of frames after the previous one: loop timing is sample-accurate and costs no
+ * per-iteration setup. Rendering does not allocate.
+ * <p>
+ * Not thread safe; the caller serializes {@link #start} with {@link #render}.
+ */
+public final class LoopRenderer {
+	private final short[] mClip;
+	private final int mChannelCount;
+	private final int mSampleRate;
+	private final int mClipFrames;
+
+	private float mGain = 1.0f;
+	private boolean mLooping = false;
+	private long mPeriodFrames;
+	// Frames rendered since start()
+	private long mFrames = 0;
+	private boolean mFinished = true;
+
+	/**
+	 * @param clip interleaved 16-bit samples; not copied, so must not change while rendering
+	 */
+	public LoopRenderer(short[] clip, int channelCount, int sampleRate) {
+		if (channelCount <= 0 || sampleRate <= 0 || clip.length % channelCount != 0)
+			throw new IllegalArgumentException("Invalid clip format");
+
+		mClip = clip;
+		mChannelCount = channelCount;
+		mSampleRate = sampleRate;
+		mClipFrames = clip.length / channelCount;
+		mPeriodFrames = mClipFrames;
+	}
+
+	/**
+	 * Restarts rendering at the beginning of the clip.
+	 *
+	 * @param gain            linear gain applied to the clip
+	 * @param looping         false to render the clip once
+	 * @param intervalSeconds silence between the end of one play and the start of the next
+	 */
+	public void start(float gain, boolean looping, int intervalSeconds) {
+		mGain = gain;
+		mLooping = looping;
+		mPeriodFrames = mClipFrames + (long) Math.max(0, intervalSeconds) * mSampleRate;
+		mFrames = 0;
+		mFinished = mClipFrames == 0;
+	}
+
+	/**
+	 * Renders up to {@code frames} frames into {@code buffer} starting at sample 0.
+	 *
+	 * @return frames rendered; fewer than requested only when a one-shot play ends, 0 once finished
+	 */
+	public int render(short[] buffer, int frames) {
+		int rendered = 0;
+		while (rendered < frames && !mFinished) {
+			long position = mFrames % mPeriodFrames;
+			int count;
+			if (position < mClipFrames) {
+				count = (int) Math.min(frames - rendered, mClipFrames - position);
+				PcmGain.apply(mClip, (int) position * mChannelCount, buffer, rendered * mChannelCount,
+						count * mChannelCount, mGain);
+			} else if (mLooping) {
+				count = (int) Math.min(frames - rendered, mPeriodFrames - position);
+				Arrays.fill(buffer, rendered * mChannelCount, (rendered + count) * mChannelCount, (short) 0);
+			} else {
+				mFinished = true;
+				break;
+			}
+
+			rendered += count;
+			mFrames += count;
+			if (!mLooping && mFrames >= mClipFrames)
+				mFinished = true;
+		}
+
+		return rendered;
+	}
+
+	public boolean isFinished() {
+		return mFinished;
+	}
+
+	/**
+	 * Frames rendered since {@link #start}
+	 */
+	public long getFramesRendered() {
+		return mFrames;
+	}
+
+	/**
+	 * Frames from one clip start to the next
+	 */
+	public long getPeriodFrames() {
+		return mPeriodFrames;
+	}
+
+	public int getChannelCount() {
+		return mChannelCount;
+	}
+
+	public int getSampleRate() {
+		return mSampleRate;
+	}
+
+	public long getClipDurationNanos() {
+		return mClipFrames * 1000000000L / mSampleRate;
+	}
+}
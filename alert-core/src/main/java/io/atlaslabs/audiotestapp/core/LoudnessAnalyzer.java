@@ -0,0 +1,266 @@
+package io.atlaslabs.audiotestapp.core;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Streaming loudness analysis of interleaved 16-bit PCM. Samples can be fed in blocks of any size,
+ * e.g. one decoder buffer at a time, and memory use does not depend on the length of the audio.
+ * <p>
+ * Besides RMS and sample peak, it estimates perceived loudness following ITU-R BS.1770: samples are
+ * K-weighted, mean square energy is measured over 400 ms blocks overlapping by 75%, and blocks are
+ * gated at -70 LUFS and then 10 LU below the ungated loudness. Gated blocks go into a fixed
+ * histogram of 0.1 LU bins rather than a list, which keeps memory bounded. Audio shorter than one
+ * block is measured ungated. Channels are weighted equally, which matches the standard for mono
+ * and stereo.
+ */
+public final class LoudnessAnalyzer {
+	private static final double ABSOLUTE_GATE_LUFS = -70.0;
+	private static final double RELATIVE_GATE_LU = -10.0;
+	private static final double MAX_HISTOGRAM_LUFS = 5.0;
+	private static final double BIN_LU = 0.1;
+	private static final int BIN_COUNT = (int) Math.round((MAX_HISTOGRAM_LUFS - ABSOLUTE_GATE_LUFS) / BIN_LU);
+	// Sub-blocks of 100 ms; a gating block is the last four
+	private static final int SUB_BLOCKS_PER_BLOCK = 4;
+	private static final double FULL_SCALE = 32768.0;
+
+	private final int mChannelCount;
+	private final int mSubBlockFrames;
+	// Per channel: pre-filter (high shelf) and RLB high-pass coefficients and their two-sample states
+	private final double[] mShelfB = new double[3];
+	private final double[] mShelfA = new double[3];
+	private final double[] mHighPassB = new double[3];
+	private final double[] mHighPassA = new double[3];
+	private final double[] mShelfState;
+	private final double[] mHighPassState;
+
+	private final double[] mSubBlockEnergy = new double[SUB_BLOCKS_PER_BLOCK];
+	private final long[] mBinCounts = new long[BIN_COUNT];
+	private final double[] mBinEnergy = new double[BIN_COUNT];
+
+	private int mChannel = 0;
+	private int mSubBlockFrame = 0;
+	private double mSubBlockSum = 0;
+	private long mSubBlocks = 0;
+	private long mFrames = 0;
+	private double mWeightedSum = 0;
+	private double mSquareSum = 0;
+	private int mPeak = 0;
+
+	public LoudnessAnalyzer(int sampleRate, int channelCount) {
+		if (sampleRate <= 0 || channelCount <= 0)
+			throw new IllegalArgumentException("Invalid format " + sampleRate + " Hz x " + channelCount);
+
+		mChannelCount = channelCount;
+		mSubBlockFrames = Math.max(1, sampleRate / 10);
+		mShelfState = new double[channelCount * 2];
+		mHighPassState = new double[channelCount * 2];
+
+		// BS.1770 filters, recomputed for the actual sample rate
+		double k = Math.tan(Math.PI * 1681.974450955533 / sampleRate);
+		double q = 0.7071752369554196;
+		double vh = Math.pow(10.0, 3.999843853973347 / 20.0);
+		double vb = Math.pow(vh, 0.4996667741545416);
+		double a0 = 1.0 + k / q + k * k;
+		mShelfB[0] = (vh + vb * k / q + k * k) / a0;
+		mShelfB[1] = 2.0 * (k * k - vh) / a0;
+		mShelfB[2] = (vh - vb * k / q + k * k) / a0;
+		mShelfA[1] = 2.0 * (k * k - 1.0) / a0;
+		mShelfA[2] = (1.0 - k / q + k * k) / a0;
+
+		k = Math.tan(Math.PI * 38.13547087602444 / sampleRate);
+		q = 0.5003270373238773;
+		a0 = 1.0 + k / q + k * k;
+		mHighPassB[0] = 1.0;
+		mHighPassB[1] = -2.0;
+		mHighPassB[2] = 1.0;
+		mHighPassA[1] = 2.0 * (k * k - 1.0) / a0;
+		mHighPassA[2] = (1.0 - k / q + k * k) / a0;
+	}
+
+	/**
+	 * Analyzes {@code length} interleaved samples. Blocks need not hold whole frames.
+	 */
+	public void process(short[] samples, int offset, int length) {
+		for (int i = offset; i < offset + length; i++)
+			processSample(samples[i]);
+	}
+
+	/**
+	 * Analyzes the buffer's remaining samples, leaving it at its limit.
+	 */
+	public void process(ShortBuffer samples) {
+		while (samples.hasRemaining())
+			processSample(samples.get());
+	}
+
+	public Result getResult() {
+		long samples = mFrames * mChannelCount;
+		double rmsDbfs = samples > 0 ? toDb(mSquareSum / samples) : Double.NEGATIVE_INFINITY;
+		double peakDbfs = 20.0 * Math.log10(mPeak / FULL_SCALE);
+
+		return new Result(mFrames, rmsDbfs, peakDbfs, getLoudness());
+	}
+
+	public void reset() {
+		Arrays.fill(mShelfState, 0);
+		Arrays.fill(mHighPassState, 0);
+		Arrays.fill(mSubBlockEnergy, 0);
+		Arrays.fill(mBinCounts, 0);
+		Arrays.fill(mBinEnergy, 0);
+		mChannel = 0;
+		mSubBlockFrame = 0;
+		mSubBlockSum = 0;
+		mSubBlocks = 0;
+		mFrames = 0;
+		mWeightedSum = 0;
+		mSquareSum = 0;
+		mPeak = 0;
+	}
+
+	private void processSample(short sample) {
+		int magnitude = Math.abs((int) sample);
+		if (magnitude > mPeak)
+			mPeak = magnitude;
+
+		double x = sample / FULL_SCALE;
+		mSquareSum += x * x;
+
+		// Two direct form II transposed biquads
+		int state = mChannel * 2;
+		double y = mShelfB[0] * x + mShelfState[state];
+		mShelfState[state] = mShelfB[1] * x - mShelfA[1] * y + mShelfState[state + 1];
+		mShelfState[state + 1] = mShelfB[2] * x - mShelfA[2] * y;
+
+		double z = mHighPassB[0] * y + mHighPassState[state];
+		mHighPassState[state] = mHighPassB[1] * y - mHighPassA[1] * z + mHighPassState[state + 1];
+		mHighPassState[state + 1] = mHighPassB[2] * y - mHighPassA[2] * z;
+
+		mSubBlockSum += z * z;
+		mWeightedSum += z * z;
+
+		if (++mChannel < mChannelCount)
+			return;
+
+		mChannel = 0;
+		mFrames++;
+		if (++mSubBlockFrame == mSubBlockFrames)
+			endSubBlock();
+	}
+
+	private void endSubBlock() {
+		mSubBlockEnergy[(int) (mSubBlocks % SUB_BLOCKS_PER_BLOCK)] = mSubBlockSum / mSubBlockFrames;
+		mSubBlocks++;
+		mSubBlockFrame = 0;
+		mSubBlockSum = 0;
+
+		if (mSubBlocks < SUB_BLOCKS_PER_BLOCK)
+			return;
+
+		double energy = 0;
+		for (double subBlock : mSubBlockEnergy)
+			energy += subBlock;
+		energy /= SUB_BLOCKS_PER_BLOCK;
+
+		double loudness = toLufs(energy);
+		if (loudness < ABSOLUTE_GATE_LUFS)
+			return;
+
+		int bin = Math.min(BIN_COUNT - 1, (int) ((loudness - ABSOLUTE_GATE_LUFS) / BIN_LU));
+		mBinCounts[bin]++;
+		mBinEnergy[bin] += energy;
+	}
+
+	private double getLoudness() {
+		if (mSubBlocks < SUB_BLOCKS_PER_BLOCK)
+			return mFrames > 0 ? toLufs(mWeightedSum / mFrames) : Double.NEGATIVE_INFINITY;
+
+		long count = 0;
+		double energy = 0;
+		for (int bin = 0; bin < BIN_COUNT; bin++) {
+			count += mBinCounts[bin];
+			energy += mBinEnergy[bin];
+		}
+
+		// Every block was below the absolute gate
+		if (count == 0)
+			return Double.NEGATIVE_INFINITY;
+
+		double threshold = toLufs(energy / count) + RELATIVE_GATE_LU;
+		int firstBin = Math.max(0, (int) Math.ceil((threshold - ABSOLUTE_GATE_LUFS) / BIN_LU));
+		count = 0;
+		energy = 0;
+		for (int bin = firstBin; bin < BIN_COUNT; bin++) {
+			count += mBinCounts[bin];
+			energy += mBinEnergy[bin];
+		}
+
+		return count > 0 ? toLufs(energy / count) : Double.NEGATIVE_INFINITY;
+	}
+
+	private static double toLufs(double energy) {
+		return -0.691 + toDb(energy);
+	}
+
+	private static double toDb(double meanSquare) {
+		return 10.0 * Math.log10(meanSquare);
+	}
+
+	/**
+	 * Measurements of the audio analyzed so far. Levels are negative infinity for silence.
+	 */
+	public static final class Result {
+		private final long mFrameCount;
+		private final double mRmsDbfs;
+		private final double mPeakDbfs;
+		private final double mLoudnessLufs;
+
+		Result(long frameCount, double rmsDbfs, double peakDbfs, double loudnessLufs) {
+			mFrameCount = frameCount;
+			mRmsDbfs = rmsDbfs;
+			mPeakDbfs = peakDbfs;
+			mLoudnessLufs = loudnessLufs;
+		}
+
+		public long getFrameCount() {
+			return mFrameCount;
+		}
+
+		public double getRmsDbfs() {
+			return mRmsDbfs;
+		}
+
+		public double getPeakDbfs() {
+			return mPeakDbfs;
+		}
+
+		/**
+		 * Gated loudness in LUFS
+		 */
+		public double getLoudnessLufs() {
+			return mLoudnessLufs;
+		}
+
+		/**
+		 * Linear gain that brings the audio to {@code targetLufs}, limited so the peak stays at or
+		 * below {@code peakCeilingDbfs} and the gain does not exceed {@code maxGainDb}. 1 for silence.
+		 */
+		public float getNormalizationGain(double targetLufs, double peakCeilingDbfs, double maxGainDb) {
+			if (Double.isInfinite(mLoudnessLufs))
+				return 1.0f;
+
+			double gainDb = Math.min(targetLufs - mLoudnessLufs, maxGainDb);
+			if (!Double.isInfinite(mPeakDbfs))
+				gainDb = Math.min(gainDb, peakCeilingDbfs - mPeakDbfs);
+
+			return (float) Math.pow(10.0, gainDb / 20.0);
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.US, "%d frames, %.1f LUFS, RMS %.1f dBFS, peak %.1f dBFS", mFrameCount,
+					mLoudnessLufs, mRmsDbfs, mPeakDbfs);
+		}
+	}
+}
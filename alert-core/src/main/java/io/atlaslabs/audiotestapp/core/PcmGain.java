@@ -0,0 +1,41 @@
+package io.atlaslabs.audiotestapp.core;
+
+/**
+ * Applies a gain to 16-bit PCM samples, saturating instead of wrapping. Used to honor the
+ * requested alert volume in software rather than by changing the system stream volume.
+ * <p>
+ * The gain is converted to fixed point once per call and the inner loop is a straight
+ * multiply, shift and clamp over arrays, a shape the JIT can vectorize. Nothing is allocated.
+ */
+public final class PcmGain {
+	// +18 dB; a full-scale sample times MAX_GAIN in fixed point still fits an int
+	public static final float MAX_GAIN = 8f;
+	// Q12 fixed point, steps of 1/4096
+	private static final int FRACTION_BITS = 12;
+
+	// Can't be instantiated
+	private PcmGain() {
+	}
+
+	/**
+	 * Writes {@code src} scaled by {@code gain} to {@code dst}. The arrays may be the same,
+	 * to scale in place.
+	 *
+	 * @param gain linear gain, clamped to [0, {@link #MAX_GAIN}]
+	 */
+	public static void apply(short[] src, int srcOffset, short[] dst, int dstOffset, int length, float gain) {
+		int fixedGain = Math.round(Math.max(0f, Math.min(gain, MAX_GAIN)) * (1 << FRACTION_BITS));
+
+		for (int i = 0; i < length; i++) {
+			int scaled = (src[srcOffset + i] * fixedGain) >> FRACTION_BITS;
+			dst[dstOffset + i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, scaled));
+		}
+	}
+
+	/**
+	 * True if applying {@code gain} would leave samples unchanged, so the copy can be skipped.
+	 */
+	public static boolean isUnity(float gain) {
+		return Math.round(gain * (1 << FRACTION_BITS)) == 1 << FRACTION_BITS;
+	}
+}
@@ -0,0 +1,118 @@
+package io.atlaslabs.audiotestapp.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Playback state of one player, packed with a monotonic generation into a single {@link AtomicLong}
+ * so that state and generation always change together:
+ * <pre>
+ * IDLE -> STARTING -> PLAYING <-> WAITING_INTERVAL
+ *            any state -> STOPPING -> IDLE
+ * </pre>
+ * {@link #begin()} and {@link #stop()} start a new generation, which supersedes every transition
+ * still pending for an older one. They retry their compare-and-set until it succeeds, so they are
+ * lock-free but not wait-free. All other transitions are a single compare-and-set against the
+ * caller's generation and never retry: a caller that lost to a newer start or stop simply fails
+ * and backs off. Reads never block.
+ * <p>
+ * This only makes the state itself safe to share; it does not make a player lock-free.
+ * {@link AlertLoopPlayer} still serializes its output calls under a lock and uses the state to
+ * decide, under that lock, whether a call is still wanted.
+ * <p>
+ * Generations wrap after 2^61 starts and stops, which only matters to a caller holding a
+ * generation across that many.
+ */
+public final class PlaybackStateMachine {
+	public static final int IDLE = 0;
+	public static final int STARTING = 1;
+	public static final int PLAYING = 2;
+	public static final int WAITING_INTERVAL = 3;
+	public static final int STOPPING = 4;
+
+	private static final int STATE_BITS = 3;
+	private static final long STATE_MASK = (1 << STATE_BITS) - 1;
+	private static final long GENERATION_MASK = -1L >>> STATE_BITS;
+	private static final String[] STATE_NAMES = {"IDLE", "STARTING", "PLAYING", "WAITING_INTERVAL", "STOPPING"};
+
+	private final AtomicLong mState;
+
+	public PlaybackStateMachine() {
+		this(0, IDLE);
+	}
+
+	// For tests
+	PlaybackStateMachine(long generation, int state) {
+		mState = new AtomicLong(pack(generation & GENERATION_MASK, state));
+	}
+
+	/**
+	 * Enters STARTING under a new generation, superseding whatever was in progress.
+	 *
+	 * @return the new generation
+	 */
+	public long begin() {
+		return advance(STARTING);
+	}
+
+	/**
+	 * Enters STOPPING under a new generation, superseding whatever was in progress. Finish with
+	 * {@code transition(generation, STOPPING, IDLE)} once output is silenced.
+	 *
+	 * @return the new generation
+	 */
+	public long stop() {
+		return advance(STOPPING);
+	}
+
+	/**
+	 * Moves from {@code from} to {@code to} if {@code generation} is still current and in {@code from}.
+	 *
+	 * @return false if the generation was superseded or is in another state
+	 */
+	public boolean transition(long generation, int from, int to) {
+		return mState.compareAndSet(pack(generation, from), pack(generation, to));
+	}
+
+	public boolean isCurrent(long generation) {
+		return generationOf(mState.get()) == generation;
+	}
+
+	public int getState() {
+		return stateOf(mState.get());
+	}
+
+	public long getGeneration() {
+		return generationOf(mState.get());
+	}
+
+	public static String stateName(int state) {
+		return state >= 0 && state < STATE_NAMES.length ? STATE_NAMES[state] : String.valueOf(state);
+	}
+
+	@Override
+	public String toString() {
+		long value = mState.get();
+		return stateName(stateOf(value)) + "#" + generationOf(value);
+	}
+
+	private long advance(int state) {
+		while (true) {
+			long current = mState.get();
+			long generation = (generationOf(current) + 1) & GENERATION_MASK;
+			if (mState.compareAndSet(current, pack(generation, state)))
+				return generation;
+		}
+	}
+
+	private static long pack(long generation, int state) {
+		return generation << STATE_BITS | state;
+	}
+
+	private static long generationOf(long value) {
+		return value >>> STATE_BITS;
+	}
+
+	private static int stateOf(long value) {
+		return (int) (value & STATE_MASK);
+	}
+}
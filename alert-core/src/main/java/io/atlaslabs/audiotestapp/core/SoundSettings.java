@@ -0,0 +1,72 @@
+package io.atlaslabs.audiotestapp.core;
+
+public class SoundSettings {
+	private static final int MAX_INTERVAL = 120;        // in seconds
+
+	private boolean _isEnabled = true;      // This must be true to enable sound; otherwise, all other properties have no effect.
+	private float _volume;      // Set between 0.0 and 1.0 to represent a fraction of the stream's maximum volume; the stream is raised to it if lower, and players that scale their output attenuate to it otherwise.  Set to -1.0 (the default volume) to not change the current volume of the device.
+	private boolean _looping;
+	private int _interval;        // in seconds; if looping is true, interval determines the pause time between play iterations; otherwise, interval has no effect
+	private final float defaultVolume;
+	private final float maxVolume;
+
+	/**
+	 * @param defaultVolume volume used when a negative volume is requested; also means "leave the device volume alone"
+	 * @param maxVolume     upper bound for the volume
+	 */
+	public SoundSettings(float defaultVolume, float maxVolume, float volume, boolean looping, int interval_sec) {
+		this.defaultVolume = defaultVolume;
+		this.maxVolume = maxVolume;
+		setVolume(volume);
+		setLooping(looping);
+		setInterval(interval_sec);
+	}
+
+	public SoundSettings(SoundSettings settings) {
+		defaultVolume = settings.defaultVolume;
+		maxVolume = settings.maxVolume;
+		setIsEnabled(settings.getIsEnabled());
+		setVolume(settings.getVolume());
+		setLooping(settings.getLooping());
+		setInterval(settings.getInterval());
+	}
+
+	public boolean getIsEnabled() {
+		return _isEnabled;
+	}
+
+	public void setIsEnabled(boolean value) {
+		_isEnabled = value;
+	}
+
+	public float getVolume() {
+		return _volume;
+	}
+
+	public void setVolume(float value) {
+		_volume = Math.min(value, maxVolume);
+
+		if (_volume < 0)
+			_volume = defaultVolume;
+	}
+
+	public float getDefaultVolume() {
+		return defaultVolume;
+	}
+
+	public boolean getLooping() {
+		return _looping;
+	}
+
+	public void setLooping(boolean value) {
+		_looping = value;
+	}
+
+	public int getInterval() {
+		return _interval;
+	}
+
+	public void setInterval(int value) {
+		_interval = Math.min(Math.max(value, 0), MAX_INTERVAL);
+	}
+}
@@ -0,0 +1,206 @@
+package io.atlaslabs.audiotestapp.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compact description of a synthesized alert tone, rendered by {@link ToneSynthesizer}. A tone is
+ * a sequence of segments separated by commas, each written as
+ * <pre>
+ *     [sq]tones:durationMs[@level][~decayMs]
+ * </pre>
+ * where {@code tones} is a frequency in Hz, a sweep {@code 500>1500}, several simultaneous
+ * frequencies {@code 880+1320}, or {@code 0} for a rest. {@code sq} selects a square wave instead
+ * of a sine, {@code level} is the peak amplitude (0-1, default {@link #DEFAULT_LEVEL}) and
+ * {@code decayMs} the time constant of an exponential decay, for bell-like tones.
+ * <p>
+ * For example {@link #WOOP} is two rising sweeps, {@link #CHIME} a decaying three-note chord and
+ * {@link #BEEPS} three square-wave pulses.
+ */
+public final class ToneSpec {
+	public static final String WOOP = "500>1500:450,0:60,500>1500:450,0:60";
+	public static final String CHIME = "880+1320+1760:900~280";
+	public static final String BEEPS = "sq1000:150@0.5,0:100,sq1000:150@0.5,0:100,sq1000:150@0.5";
+	public static final float DEFAULT_LEVEL = 0.8f;
+	public static final int MAX_PARTIALS = 4;
+
+	public static final int WAVE_SINE = 0;
+	public static final int WAVE_SQUARE = 1;
+
+	private final String mText;
+	private final Segment[] mSegments;
+
+	private ToneSpec(String text, Segment[] segments) {
+		mText = text;
+		mSegments = segments;
+	}
+
+	/**
+	 * Parses a tone description or one of the preset names "woop", "chime" and "beeps".
+	 *
+	 * @throws IllegalArgumentException if the description is malformed
+	 */
+	public static ToneSpec parse(String text) {
+		String spec = text.trim();
+		switch (spec.toLowerCase(Locale.US)) {
+			case "woop":
+				spec = WOOP;
+				break;
+			case "chime":
+				spec = CHIME;
+				break;
+			case "beeps":
+				spec = BEEPS;
+				break;
+			default:
+				break;
+		}
+
+		List<Segment> segments = new ArrayList<>();
+		for (String segment : spec.split(",")) {
+			try {
+				segments.add(parseSegment(segment.trim()));
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Invalid tone segment \"" + segment + "\" in \"" + text + "\"", e);
+			}
+		}
+
+		return new ToneSpec(spec, segments.toArray(new Segment[0]));
+	}
+
+	public int getSegmentCount() {
+		return mSegments.length;
+	}
+
+	public Segment getSegment(int index) {
+		return mSegments[index];
+	}
+
+	public long getDurationMs() {
+		long durationMs = 0;
+		for (Segment segment : mSegments)
+			durationMs += segment.mDurationMs;
+
+		return durationMs;
+	}
+
+	/**
+	 * Frames the whole tone renders to at {@code sampleRate}
+	 */
+	public long getFrameCount(int sampleRate) {
+		long frames = 0;
+		for (Segment segment : mSegments)
+			frames += segment.getFrameCount(sampleRate);
+
+		return frames;
+	}
+
+	@Override
+	public String toString() {
+		return mText;
+	}
+
+	private static Segment parseSegment(String text) {
+		int wave = WAVE_SINE;
+		if (text.startsWith("sq")) {
+			wave = WAVE_SQUARE;
+			text = text.substring(2);
+		}
+
+		int decayIndex = text.indexOf('~');
+		float decayMs = decayIndex >= 0 ? Float.parseFloat(text.substring(decayIndex + 1)) : 0;
+		if (decayIndex >= 0)
+			text = text.substring(0, decayIndex);
+
+		int levelIndex = text.indexOf('@');
+		float level = levelIndex >= 0 ? Float.parseFloat(text.substring(levelIndex + 1)) : DEFAULT_LEVEL;
+		if (levelIndex >= 0)
+			text = text.substring(0, levelIndex);
+
+		int colon = text.indexOf(':');
+		String tones = text.substring(0, colon);
+		int durationMs = Integer.parseInt(text.substring(colon + 1));
+
+		float[] startHz;
+		float[] endHz;
+		int sweep = tones.indexOf('>');
+		if (sweep >= 0) {
+			startHz = new float[]{Float.parseFloat(tones.substring(0, sweep))};
+			endHz = new float[]{Float.parseFloat(tones.substring(sweep + 1))};
+		} else {
+			String[] partials = tones.split("\\+");
+			if (partials.length > MAX_PARTIALS)
+				throw new IllegalArgumentException("At most " + MAX_PARTIALS + " simultaneous tones");
+
+			startHz = new float[partials.length];
+			for (int i = 0; i < partials.length; i++)
+				startHz[i] = Float.parseFloat(partials[i]);
+			endHz = startHz;
+		}
+
+		if (durationMs < 0 || level < 0 || level > 1 || decayMs < 0)
+			throw new IllegalArgumentException("Out of range");
+		// A single 0 Hz tone is a rest
+		if (startHz.length == 1 && startHz[0] == 0 && endHz[0] == 0)
+			level = 0;
+
+		return new Segment(wave, startHz, endHz, durationMs, level, decayMs);
+	}
+
+	/**
+	 * One tone, chord, sweep or rest.
+	 */
+	public static final class Segment {
+		private final int mWave;
+		private final float[] mStartHz;
+		private final float[] mEndHz;
+		private final int mDurationMs;
+		private final float mLevel;
+		private final float mDecayMs;
+
+		Segment(int wave, float[] startHz, float[] endHz, int durationMs, float level, float decayMs) {
+			mWave = wave;
+			mStartHz = startHz;
+			mEndHz = endHz;
+			mDurationMs = durationMs;
+			mLevel = level;
+			mDecayMs = decayMs;
+		}
+
+		public int getWave() {
+			return mWave;
+		}
+
+		public int getPartialCount() {
+			return mStartHz.length;
+		}
+
+		public float getStartHz(int partial) {
+			return mStartHz[partial];
+		}
+
+		public float getEndHz(int partial) {
+			return mEndHz[partial];
+		}
+
+		public int getDurationMs() {
+			return mDurationMs;
+		}
+
+		public float getLevel() {
+			return mLevel;
+		}
+
+		/**
+		 * Exponential decay time constant, or 0 for a steady level
+		 */
+		public float getDecayMs() {
+			return mDecayMs;
+		}
+
+		public long getFrameCount(int sampleRate) {
+			return (long) mDurationMs * sampleRate / 1000;
+		}
+	}
+}
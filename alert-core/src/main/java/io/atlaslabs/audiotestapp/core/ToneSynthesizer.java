@@ -0,0 +1,191 @@
+package io.atlaslabs.audiotestapp.core;
+
+/**
+ * Renders a {@link ToneSpec} to mono 16-bit PCM from precomputed wavetables. Oscillators are
+ * phase accumulators that read a table with linear interpolation; sweeps are exponential, by
+ * multiplying the phase increment each frame. Output goes into the caller's buffer a block at a
+ * time and nothing is allocated while rendering, so a tone can be streamed to an output as well
+ * as rendered into a clip.
+ * <p>
+ * Square waves are band-limited: each segment reads the table with the most odd harmonics whose
+ * highest one stays below Nyquist at the segment's highest frequency, so high notes don't alias.
+ * <p>
+ * Every segment ramps in and out over {@link #RAMP_MS} to avoid clicks. Not thread safe.
+ */
+public final class ToneSynthesizer {
+	private static final int TABLE_BITS = 11;
+	private static final int TABLE_SIZE = 1 << TABLE_BITS;
+	private static final int RAMP_MS = 5;
+	// Highest odd harmonic of each band-limited square table, richest first; 1 is a sine
+	private static final int[] SQUARE_HARMONICS = {15, 7, 3, 1};
+	// Tables have one guard entry so interpolation never wraps
+	private static final float[] SINE_TABLE = sineTable();
+	private static final float[][] SQUARE_TABLES = squareTables();
+
+	private final ToneSpec mSpec;
+	private final int mSampleRate;
+	private final int mRampFrames;
+	private final double[] mPhase = new double[ToneSpec.MAX_PARTIALS];
+	private final double[] mIncrement = new double[ToneSpec.MAX_PARTIALS];
+	private final double[] mIncrementRatio = new double[ToneSpec.MAX_PARTIALS];
+
+	private int mSegment = -1;
+	private long mSegmentFrame;
+	private long mSegmentFrames;
+	private float[] mTable;
+	private int mPartials;
+	private float mPartialLevel;
+	private double mDecay;
+	private double mDecayFactor;
+
+	public ToneSynthesizer(ToneSpec spec, int sampleRate) {
+		mSpec = spec;
+		mSampleRate = sampleRate;
+		mRampFrames = Math.max(1, sampleRate * RAMP_MS / 1000);
+		reset();
+	}
+
+	/**
+	 * Renders the whole tone into a new array
+	 */
+	public static short[] render(ToneSpec spec, int sampleRate) {
+		long frames = spec.getFrameCount(sampleRate);
+		if (frames > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Tone too long: " + spec.getDurationMs() + " ms");
+
+		short[] samples = new short[(int) frames];
+		new ToneSynthesizer(spec, sampleRate).render(samples, 0, samples.length);
+		return samples;
+	}
+
+	/**
+	 * Restarts at the first segment.
+	 */
+	public void reset() {
+		mSegment = -1;
+		nextSegment();
+	}
+
+	public boolean isFinished() {
+		return mSegment >= mSpec.getSegmentCount();
+	}
+
+	/**
+	 * Renders up to {@code frames} frames into {@code buffer} at {@code offset}.
+	 *
+	 * @return frames rendered; fewer than requested only at the end of the tone, 0 once finished
+	 */
+	public int render(short[] buffer, int offset, int frames) {
+		int rendered = 0;
+		while (rendered < frames && !isFinished()) {
+			int count = (int) Math.min(frames - rendered, mSegmentFrames - mSegmentFrame);
+			renderSegment(buffer, offset + rendered, count);
+			rendered += count;
+			mSegmentFrame += count;
+
+			if (mSegmentFrame >= mSegmentFrames)
+				nextSegment();
+		}
+
+		return rendered;
+	}
+
+	private void renderSegment(short[] buffer, int offset, int count) {
+		float[] table = mTable;
+		for (int i = 0; i < count; i++) {
+			long frame = mSegmentFrame + i;
+			double value = 0;
+			for (int p = 0; p < mPartials; p++) {
+				double index = mPhase[p] * TABLE_SIZE;
+				int whole = (int) index;
+				double fraction = index - whole;
+				value += table[whole] + fraction * (table[whole + 1] - table[whole]);
+
+				mPhase[p] += mIncrement[p];
+				if (mPhase[p] >= 1.0)
+					mPhase[p] -= 1.0;
+				mIncrement[p] *= mIncrementRatio[p];
+			}
+
+			double ramp = Math.min(1.0, Math.min(frame, mSegmentFrames - 1 - frame) / (double) mRampFrames);
+			double sample = value * mPartialLevel * mDecay * ramp;
+			mDecay *= mDecayFactor;
+
+			buffer[offset + i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample * Short.MAX_VALUE)));
+		}
+	}
+
+	private void nextSegment() {
+		do {
+			mSegment++;
+		} while (!isFinished() && mSpec.getSegment(mSegment).getFrameCount(mSampleRate) == 0);
+
+		if (isFinished())
+			return;
+
+		ToneSpec.Segment segment = mSpec.getSegment(mSegment);
+		mSegmentFrame = 0;
+		mSegmentFrames = segment.getFrameCount(mSampleRate);
+		mPartials = segment.getPartialCount();
+		mPartialLevel = segment.getLevel() / mPartials;
+		mDecay = 1.0;
+		mDecayFactor = segment.getDecayMs() > 0 ? Math.exp(-1000.0 / (segment.getDecayMs() * mSampleRate)) : 1.0;
+
+		double maxHz = 0;
+		for (int p = 0; p < mPartials; p++) {
+			double startHz = Math.min(segment.getStartHz(p), mSampleRate / 2.0);
+			double endHz = Math.min(segment.getEndHz(p), mSampleRate / 2.0);
+			maxHz = Math.max(maxHz, Math.max(startHz, endHz));
+			mPhase[p] = 0;
+			mIncrement[p] = startHz / mSampleRate;
+			mIncrementRatio[p] = startHz > 0 && endHz > 0 && startHz != endHz
+					? Math.pow(endHz / startHz, 1.0 / mSegmentFrames) : 1.0;
+		}
+
+		mTable = segment.getWave() == ToneSpec.WAVE_SQUARE ? squareTable(maxHz) : SINE_TABLE;
+	}
+
+	private float[] squareTable(double maxHz) {
+		for (int i = 0; i < SQUARE_HARMONICS.length - 1; i++) {
+			if (SQUARE_HARMONICS[i] * maxHz < mSampleRate / 2.0)
+				return SQUARE_TABLES[i];
+		}
+
+		return SQUARE_TABLES[SQUARE_HARMONICS.length - 1];
+	}
+
+	private static float[] sineTable() {
+		float[] table = new float[TABLE_SIZE + 1];
+		for (int i = 0; i <= TABLE_SIZE; i++)
+			table[i] = (float) Math.sin(2 * Math.PI * i / TABLE_SIZE);
+
+		return table;
+	}
+
+	private static float[][] squareTables() {
+		float[][] tables = new float[SQUARE_HARMONICS.length][];
+		for (int i = 0; i < tables.length; i++)
+			tables[i] = squareTable(SQUARE_HARMONICS[i]);
+
+		return tables;
+	}
+
+	private static float[] squareTable(int maxHarmonic) {
+		float[] table = new float[TABLE_SIZE + 1];
+		float peak = 0;
+		for (int i = 0; i <= TABLE_SIZE; i++) {
+			double value = 0;
+			for (int harmonic = 1; harmonic <= maxHarmonic; harmonic += 2)
+				value += Math.sin(2 * Math.PI * harmonic * i / TABLE_SIZE) / harmonic;
+
+			table[i] = (float) value;
+			peak = Math.max(peak, Math.abs(table[i]));
+		}
+
+		// Normalized so the overshoot at the edges peaks at full scale
+		for (int i = 0; i <= TABLE_SIZE; i++)
+			table[i] /= peak;
+
+		return table;
+	}
+}
@@ -0,0 +1,141 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AlertArbiterTest {
+	@Test
+	public void higherPriority_preemptsAndLowerResumes() throws InterruptedException {
+		RecordingPlayer player = new RecordingPlayer();
+		AlertArbiter arbiter = new AlertArbiter(player);
+		SoundSettings low = settings(true);
+		SoundSettings critical = settings(true);
+
+		arbiter.startSound(AlertArbiter.PRIORITY_LOW, "low", low);
+		arbiter.startSound(AlertArbiter.PRIORITY_CRITICAL, "critical", critical);
+		awaitPlayer();
+		assertSame(critical, player.lastStarted());
+		assertEquals("critical", arbiter.getActiveRequest().getSourceId());
+
+		// Clip duration is unknown, so the loop resumes at once instead of on its old schedule
+		arbiter.stopSound("critical");
+		awaitPlayer();
+		assertSame(low, player.lastStarted());
+		assertEquals("low", arbiter.getActiveRequest().getSourceId());
+	}
+
+	@Test
+	public void lowerPriority_waitsBehindActive() throws InterruptedException {
+		RecordingPlayer player = new RecordingPlayer();
+		AlertArbiter arbiter = new AlertArbiter(player);
+		SoundSettings normal = settings(true);
+
+		arbiter.startSound(AlertArbiter.PRIORITY_NORMAL, "normal", normal);
+		arbiter.startSound(AlertArbiter.PRIORITY_LOW, "low", settings(true));
+		awaitPlayer();
+
+		assertEquals(1, player.mStarted.size());
+		assertSame(normal, player.lastStarted());
+	}
+
+	@Test
+	public void equalPriority_mostRecentWins() throws InterruptedException {
+		RecordingPlayer player = new RecordingPlayer();
+		AlertArbiter arbiter = new AlertArbiter(player);
+		SoundSettings second = settings(true);
+
+		arbiter.startSound(AlertArbiter.PRIORITY_NORMAL, "first", settings(true));
+		arbiter.startSound(AlertArbiter.PRIORITY_NORMAL, "second", second);
+		awaitPlayer();
+
+		assertSame(second, player.lastStarted());
+	}
+
+	@Test
+	public void preemptedOneShot_isDropped() throws InterruptedException {
+		RecordingPlayer player = new RecordingPlayer();
+		AlertArbiter arbiter = new AlertArbiter(player);
+
+		arbiter.startSound(AlertArbiter.PRIORITY_LOW, "low", settings(false));
+		arbiter.startSound(AlertArbiter.PRIORITY_CRITICAL, "critical", settings(true));
+		arbiter.stopSound("critical");
+		awaitPlayer();
+
+		assertEquals(2, player.mStarted.size());
+		assertNull(arbiter.getActiveRequest());
+		assertEquals(1, player.mStops);
+	}
+
+	@Test
+	public void stopSound_stopsEverySource() throws InterruptedException {
+		RecordingPlayer player = new RecordingPlayer();
+		AlertArbiter arbiter = new AlertArbiter(player);
+
+		arbiter.startSound(AlertArbiter.PRIORITY_LOW, "low", settings(true));
+		arbiter.startSound(AlertArbiter.PRIORITY_NORMAL, "normal", settings(true));
+		arbiter.stopSound();
+		awaitPlayer();
+
+		assertNull(arbiter.getActiveRequest());
+		assertEquals(1, player.mStops);
+	}
+
+	/**
+	 * Waits for the player calls queued so far; the scheduler runs them in order on one thread.
+	 */
+	private static void awaitPlayer() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		AlertScheduler.getInstance().execute(latch::countDown);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+	}
+
+	private static SoundSettings settings(boolean looping) {
+		return new SoundSettings(0.5f, 1f, 0.5f, looping, 1);
+	}
+
+	/**
+	 * Records calls, which arrive on the scheduler thread; read them after {@link #awaitPlayer()}.
+	 */
+	private static final class RecordingPlayer implements IAlertPlayer {
+		private final List<SoundSettings> mStarted = new ArrayList<>();
+		private final AlertMetrics mMetrics = new AlertMetrics();
+		private int mStops = 0;
+
+		@Override
+		public void prepare() {
+		}
+
+		@Override
+		public void startSound(SoundSettings soundSettings) {
+			mStarted.add(soundSettings);
+		}
+
+		@Override
+		public void stopSound() {
+			mStops++;
+		}
+
+		@Override
+		public long getClipDurationNanos() {
+			return 0;
+		}
+
+		@Override
+		public AlertMetrics getMetrics() {
+			return mMetrics;
+		}
+
+		SoundSettings lastStarted() {
+			return mStarted.get(mStarted.size() - 1);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AlertSchedulerTest {
+	private static final long DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	@Test
+	public void currentGeneration_runs() throws InterruptedException {
+		AlertScheduler.Channel channel = AlertScheduler.getInstance().newChannel();
+		CountDownLatch ran = new CountDownLatch(1);
+
+		long generation = channel.begin();
+		assertTrue(channel.scheduleAt(generation, System.nanoTime() + DELAY_NANOS, ran::countDown));
+		assertTrue(ran.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void supersededGeneration_isNotScheduled() {
+		AlertScheduler.Channel channel = AlertScheduler.getInstance().newChannel();
+		long stale = channel.begin();
+		channel.begin();
+
+		assertFalse(channel.isCurrent(stale));
+		assertFalse(channel.scheduleAt(stale, System.nanoTime(), () -> { }));
+		assertFalse(channel.execute(stale, () -> { }));
+	}
+
+	@Test
+	public void beginAndCancel_dropPendingWork() throws InterruptedException {
+		AlertScheduler.Channel channel = AlertScheduler.getInstance().newChannel();
+		AtomicBoolean ran = new AtomicBoolean();
+
+		long generation = channel.begin();
+		channel.scheduleAt(generation, System.nanoTime() + DELAY_NANOS, () -> ran.set(true));
+		long next = channel.begin();
+		channel.scheduleAt(next, System.nanoTime() + DELAY_NANOS, () -> ran.set(true));
+		channel.cancel();
+
+		assertTrue(await(System.nanoTime() + 2 * DELAY_NANOS));
+		assertFalse(ran.get());
+	}
+
+	@Test
+	public void channels_doNotCancelEachOther() throws InterruptedException {
+		AlertScheduler.Channel first = AlertScheduler.getInstance().newChannel();
+		AlertScheduler.Channel second = AlertScheduler.getInstance().newChannel();
+		CountDownLatch ran = new CountDownLatch(1);
+
+		first.scheduleAt(first.begin(), System.nanoTime() + DELAY_NANOS, ran::countDown);
+		second.begin();
+		second.cancel();
+
+		assertTrue(ran.await(1, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Waits on the scheduler thread until {@code deadlineNanos} has passed, so anything due earlier has run.
+	 */
+	private static boolean await(long deadlineNanos) throws InterruptedException {
+		AlertScheduler.Channel channel = AlertScheduler.getInstance().newChannel();
+		CountDownLatch passed = new CountDownLatch(1);
+		channel.scheduleAt(channel.begin(), deadlineNanos, passed::countDown);
+		return passed.await(1, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,50 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DiagnosticsRecorderTest {
+	private static final long INTERVAL_NANOS = 1000000;
+
+	@Test
+	public void samples_areRateLimited() {
+		DiagnosticsRecorder recorder = new DiagnosticsRecorder(4, INTERVAL_NANOS, "a");
+		assertTrue(recorder.record(0, new int[]{1}));
+		assertFalse(recorder.isSampleDue(INTERVAL_NANOS - 1));
+		assertFalse(recorder.record(INTERVAL_NANOS - 1, new int[]{2}));
+		assertTrue(recorder.record(INTERVAL_NANOS, new int[]{3}));
+		assertEquals(2, recorder.size());
+	}
+
+	@Test
+	public void full_overwritesOldestAndDumpsInOrder() throws IOException {
+		DiagnosticsRecorder recorder = new DiagnosticsRecorder(2, INTERVAL_NANOS, "a", "b");
+		int[] values = new int[2];
+		for (int i = 0; i < 3; i++) {
+			values[0] = i;
+			values[1] = -i;
+			recorder.record(i * INTERVAL_NANOS, values);
+		}
+
+		assertEquals(2, recorder.size());
+		assertEquals(1, recorder.getOverwrittenCount());
+
+		StringBuilder out = new StringBuilder();
+		recorder.dump(out);
+		String[] lines = out.toString().split("\n");
+		assertEquals(3, lines.length);
+		assertEquals("time_ms,a,b", lines[0]);
+		assertTrue(lines[1], lines[1].endsWith(",1,-1"));
+		assertTrue(lines[2], lines[2].endsWith(",2,-2"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void record_rejectsWrongColumnCount() {
+		new DiagnosticsRecorder(2, INTERVAL_NANOS, "a", "b").record(0, new int[]{1});
+	}
+}
@@ -0,0 +1,94 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+	@Test
+	public void smallValues_haveExactBuckets() {
+		for (long micros = 0; micros < 16; micros++) {
+			int index = LatencyHistogram.bucketIndex(micros);
+			assertEquals(micros, index);
+			assertEquals(micros, LatencyHistogram.bucketUpperBound(index));
+		}
+	}
+
+	@Test
+	public void bucketBounds_containValueWithinSixPercent() {
+		for (long micros = 16; micros < 1L << 40; micros = micros * 3 / 2 + 7) {
+			int index = LatencyHistogram.bucketIndex(micros);
+			long upper = LatencyHistogram.bucketUpperBound(index);
+			long lower = index > 0 ? LatencyHistogram.bucketUpperBound(index - 1) + 1 : 0;
+
+			// Values above the trackable range are clamped into the last bucket
+			if (micros < 1L << 38) {
+				assertTrue(micros + " in [" + lower + ", " + upper + "]", lower <= micros && micros <= upper);
+				assertTrue(micros + " bucket too wide", upper - lower + 1 <= Math.max(1, micros / 16 + 1));
+			}
+		}
+	}
+
+	@Test
+	public void bucketIndex_isMonotonic() {
+		int previous = 0;
+		for (long micros = 0; micros < 100000; micros++) {
+			int index = LatencyHistogram.bucketIndex(micros);
+			assertTrue(index >= previous);
+			assertTrue(index - previous <= 1);
+			previous = index;
+		}
+	}
+
+	@Test
+	public void hugeValues_areClampedIntoLastBucket() {
+		int last = LatencyHistogram.bucketIndex(Long.MAX_VALUE);
+		assertEquals(last, LatencyHistogram.bucketIndex(1L << 50));
+
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(1, histogram.getCount());
+		assertEquals(Long.MAX_VALUE, histogram.getMaxNanos());
+	}
+
+	@Test
+	public void percentiles_reportBucketUpperBoundCappedAtMax() {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		assertEquals(0, histogram.getPercentileNanos(50));
+
+		for (int ms = 1; ms <= 100; ms++)
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(ms));
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.getMaxNanos());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.getPercentileNanos(100));
+
+		long p50 = histogram.getPercentileNanos(50);
+		assertTrue(p50 >= TimeUnit.MILLISECONDS.toNanos(50));
+		assertTrue(p50 <= TimeUnit.MILLISECONDS.toNanos(50) * 17 / 16);
+	}
+
+	@Test
+	public void negativeValues_recordAsZero() {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		histogram.record(-5);
+
+		assertEquals(1, histogram.getCount());
+		assertEquals(0, histogram.getMaxNanos());
+		assertEquals(0, histogram.getPercentileNanos(99));
+	}
+
+	@Test
+	public void reset_clearsEverything() {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+		histogram.reset();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMaxNanos());
+		assertEquals(0, histogram.getPercentileNanos(50));
+	}
+}
@@ -0,0 +1,54 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoopRendererTest {
+	private static final int SAMPLE_RATE = 4;
+	private static final short[] CLIP = {100, 200, 300, 400, 500, 600};
+
+	@Test
+	public void oneShot_rendersClipOnceThenFinishes() {
+		LoopRenderer renderer = new LoopRenderer(CLIP, 1, SAMPLE_RATE);
+		renderer.start(1f, false, 0);
+
+		short[] buffer = new short[4];
+		assertEquals(4, renderer.render(buffer, 4));
+		assertArrayEquals(new short[]{100, 200, 300, 400}, buffer);
+		assertEquals(2, renderer.render(buffer, 4));
+		assertEquals(500, buffer[0]);
+		assertTrue(renderer.isFinished());
+		assertEquals(0, renderer.render(buffer, 4));
+	}
+
+	@Test
+	public void loop_insertsIntervalAsSilence() {
+		LoopRenderer renderer = new LoopRenderer(CLIP, 1, SAMPLE_RATE);
+		// One second of interval is SAMPLE_RATE frames
+		renderer.start(0.5f, true, 1);
+		assertEquals(CLIP.length + SAMPLE_RATE, renderer.getPeriodFrames());
+
+		short[] buffer = new short[13];
+		assertEquals(13, renderer.render(buffer, 13));
+		assertArrayEquals(new short[]{50, 100, 150, 200, 250, 300, 0, 0, 0, 0, 50, 100, 150}, buffer);
+		assertEquals(13, renderer.getFramesRendered());
+	}
+
+	@Test
+	public void start_restartsFromTheBeginning() {
+		LoopRenderer renderer = new LoopRenderer(new short[]{1, 2, 3, 4}, 2, SAMPLE_RATE);
+		renderer.start(1f, false, 0);
+		short[] buffer = new short[4];
+		renderer.render(buffer, 2);
+		assertTrue(renderer.isFinished());
+
+		renderer.start(1f, false, 0);
+		assertEquals(0, renderer.getFramesRendered());
+		assertEquals(1, renderer.render(buffer, 1));
+		assertArrayEquals(new short[]{1, 2, 3, 4}, buffer);
+		assertEquals(500000000L, renderer.getClipDurationNanos());
+	}
+}
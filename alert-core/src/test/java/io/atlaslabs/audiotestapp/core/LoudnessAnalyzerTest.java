@@ -0,0 +1,117 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.junit.Test;
+
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoudnessAnalyzerTest {
+	private static final int SAMPLE_RATE = 48000;
+	private static final double TOLERANCE_DB = 0.1;
+
+	@Test
+	public void fullScaleSine_matchesReferenceLevels() {
+		LoudnessAnalyzer analyzer = new LoudnessAnalyzer(SAMPLE_RATE, 1);
+		analyzer.process(sine(997, 1.0, 5.0, 1), 0, SAMPLE_RATE * 5);
+
+		LoudnessAnalyzer.Result result = analyzer.getResult();
+		assertEquals(SAMPLE_RATE * 5, result.getFrameCount());
+		assertEquals(0.0, result.getPeakDbfs(), TOLERANCE_DB);
+		assertEquals(-3.01, result.getRmsDbfs(), TOLERANCE_DB);
+		// BS.1770 reference: a 0 dBFS 997 Hz sine on one channel reads -3.01 LUFS
+		assertEquals(-3.01, result.getLoudnessLufs(), TOLERANCE_DB);
+	}
+
+	@Test
+	public void halvingAmplitude_lowersLoudnessBySixDb() {
+		LoudnessAnalyzer full = new LoudnessAnalyzer(SAMPLE_RATE, 2);
+		full.process(sine(440, 0.5, 3.0, 2), 0, SAMPLE_RATE * 3 * 2);
+		LoudnessAnalyzer half = new LoudnessAnalyzer(SAMPLE_RATE, 2);
+		half.process(sine(440, 0.25, 3.0, 2), 0, SAMPLE_RATE * 3 * 2);
+
+		assertEquals(full.getResult().getLoudnessLufs() - 6.02, half.getResult().getLoudnessLufs(), TOLERANCE_DB);
+	}
+
+	@Test
+	public void blockSize_doesNotChangeResult() {
+		short[] samples = sine(1000, 0.3, 2.0, 2);
+		LoudnessAnalyzer whole = new LoudnessAnalyzer(SAMPLE_RATE, 2);
+		whole.process(samples, 0, samples.length);
+
+		// Odd block size, so blocks split frames
+		LoudnessAnalyzer blocks = new LoudnessAnalyzer(SAMPLE_RATE, 2);
+		ShortBuffer buffer = ShortBuffer.wrap(samples);
+		while (buffer.hasRemaining()) {
+			ShortBuffer block = buffer.slice();
+			block.limit(Math.min(1021, block.remaining()));
+			blocks.process(block);
+			buffer.position(buffer.position() + block.limit());
+		}
+
+		assertEquals(whole.getResult().getLoudnessLufs(), blocks.getResult().getLoudnessLufs(), 1e-9);
+		assertEquals(whole.getResult().getRmsDbfs(), blocks.getResult().getRmsDbfs(), 1e-9);
+	}
+
+	@Test
+	public void silence_isGatedOut() {
+		short[] samples = new short[SAMPLE_RATE * 6];
+		short[] tone = sine(1000, 0.5, 3.0, 1);
+		System.arraycopy(tone, 0, samples, 0, tone.length);
+
+		LoudnessAnalyzer toneOnly = new LoudnessAnalyzer(SAMPLE_RATE, 1);
+		toneOnly.process(tone, 0, tone.length);
+		LoudnessAnalyzer withSilence = new LoudnessAnalyzer(SAMPLE_RATE, 1);
+		withSilence.process(samples, 0, samples.length);
+
+		// Three seconds of trailing silence halve the RMS energy but barely move the gated loudness;
+		// only the blocks overlapping the end of the tone pass the gate
+		assertEquals(toneOnly.getResult().getRmsDbfs() - 3.01, withSilence.getResult().getRmsDbfs(), TOLERANCE_DB);
+		assertEquals(toneOnly.getResult().getLoudnessLufs(), withSilence.getResult().getLoudnessLufs(), 0.5);
+
+		LoudnessAnalyzer silent = new LoudnessAnalyzer(SAMPLE_RATE, 1);
+		silent.process(new short[SAMPLE_RATE], 0, SAMPLE_RATE);
+		assertTrue(Double.isInfinite(silent.getResult().getLoudnessLufs()));
+		assertEquals(1.0f, silent.getResult().getNormalizationGain(-16, -1, 12), 0);
+	}
+
+	@Test
+	public void shortClip_isMeasuredUngated() {
+		LoudnessAnalyzer analyzer = new LoudnessAnalyzer(SAMPLE_RATE, 1);
+		analyzer.process(sine(997, 1.0, 0.2, 1), 0, SAMPLE_RATE / 5);
+
+		assertEquals(-3.01, analyzer.getResult().getLoudnessLufs(), 0.5);
+	}
+
+	@Test
+	public void normalizationGain_isLimitedByPeakAndMaximum() {
+		LoudnessAnalyzer loud = new LoudnessAnalyzer(SAMPLE_RATE, 1);
+		loud.process(sine(997, 1.0, 2.0, 1), 0, SAMPLE_RATE * 2);
+		// -3 LUFS to -16 LUFS is -13 dB
+		assertEquals(-13.0, toDb(loud.getResult().getNormalizationGain(-16, -1, 12)), TOLERANCE_DB);
+
+		LoudnessAnalyzer quiet = new LoudnessAnalyzer(SAMPLE_RATE, 1);
+		quiet.process(sine(997, 0.1, 2.0, 1), 0, SAMPLE_RATE * 2);
+		// -23 LUFS wants +7 dB, but the -20 dBFS peak only allows +19 dB and the maximum is 6 dB
+		assertEquals(6.0, toDb(quiet.getResult().getNormalizationGain(-16, -1, 6)), TOLERANCE_DB);
+		// A peak ceiling of -15 dBFS allows only +5 dB
+		assertEquals(5.0, toDb(quiet.getResult().getNormalizationGain(-16, -15, 12)), TOLERANCE_DB);
+	}
+
+	private static short[] sine(double frequency, double amplitude, double seconds, int channelCount) {
+		int frames = (int) (SAMPLE_RATE * seconds);
+		short[] samples = new short[frames * channelCount];
+		for (int frame = 0; frame < frames; frame++) {
+			short sample = (short) Math.round(amplitude * 32767 * Math.sin(2 * Math.PI * frequency * frame / SAMPLE_RATE));
+			for (int channel = 0; channel < channelCount; channel++)
+				samples[frame * channelCount + channel] = sample;
+		}
+
+		return samples;
+	}
+
+	private static double toDb(float gain) {
+		return 20 * Math.log10(gain);
+	}
+}
@@ -0,0 +1,59 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PcmGainTest {
+	private static final short[] SAMPLES = {0, 1000, -1000, 20000, -20000, Short.MAX_VALUE, Short.MIN_VALUE};
+
+	@Test
+	public void unity_copiesSamples() {
+		short[] out = new short[SAMPLES.length];
+		PcmGain.apply(SAMPLES, 0, out, 0, SAMPLES.length, 1f);
+
+		assertArrayEquals(SAMPLES, out);
+		assertTrue(PcmGain.isUnity(1f));
+		assertTrue(PcmGain.isUnity(1.0001f));
+		assertFalse(PcmGain.isUnity(0.999f));
+	}
+
+	@Test
+	public void half_scalesInPlace() {
+		short[] samples = SAMPLES.clone();
+		PcmGain.apply(samples, 0, samples, 0, samples.length, 0.5f);
+
+		assertArrayEquals(new short[]{0, 500, -500, 10000, -10000, 16383, -16384}, samples);
+	}
+
+	@Test
+	public void loudGain_saturatesInsteadOfWrapping() {
+		short[] out = new short[SAMPLES.length];
+		PcmGain.apply(SAMPLES, 0, out, 0, SAMPLES.length, 4f);
+
+		assertArrayEquals(new short[]{0, 4000, -4000, Short.MAX_VALUE, Short.MIN_VALUE, Short.MAX_VALUE, Short.MIN_VALUE}, out);
+	}
+
+	@Test
+	public void gain_isClampedToRange() {
+		short[] samples = {100, -100};
+		short[] out = new short[2];
+
+		PcmGain.apply(samples, 0, out, 0, 2, 100f);
+		assertArrayEquals(new short[]{(short) (100 * PcmGain.MAX_GAIN), (short) (-100 * PcmGain.MAX_GAIN)}, out);
+
+		PcmGain.apply(samples, 0, out, 0, 2, -1f);
+		assertArrayEquals(new short[]{0, 0}, out);
+	}
+
+	@Test
+	public void offsets_limitTheRange() {
+		short[] src = {1000, 2000, 3000, 4000};
+		short[] dst = {7, 7, 7, 7};
+		PcmGain.apply(src, 1, dst, 2, 2, 0.5f);
+
+		assertArrayEquals(new short[]{7, 7, 1000, 1500}, dst);
+	}
+}
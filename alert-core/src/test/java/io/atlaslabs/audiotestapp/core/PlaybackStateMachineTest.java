@@ -0,0 +1,91 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackStateMachineTest {
+	// Largest generation that fits next to the state bits
+	private static final long MAX_GENERATION = -1L >>> 3;
+
+	@Test
+	public void loop_followsTransitionTable() {
+		PlaybackStateMachine state = new PlaybackStateMachine();
+		assertEquals(PlaybackStateMachine.IDLE, state.getState());
+
+		long generation = state.begin();
+		assertEquals(PlaybackStateMachine.STARTING, state.getState());
+		assertTrue(state.transition(generation, PlaybackStateMachine.STARTING, PlaybackStateMachine.PLAYING));
+		assertTrue(state.transition(generation, PlaybackStateMachine.PLAYING, PlaybackStateMachine.WAITING_INTERVAL));
+		assertTrue(state.transition(generation, PlaybackStateMachine.WAITING_INTERVAL, PlaybackStateMachine.PLAYING));
+		assertEquals(PlaybackStateMachine.PLAYING, state.getState());
+		assertEquals(generation, state.getGeneration());
+
+		long stopGeneration = state.stop();
+		assertEquals(PlaybackStateMachine.STOPPING, state.getState());
+		assertTrue(state.transition(stopGeneration, PlaybackStateMachine.STOPPING, PlaybackStateMachine.IDLE));
+		assertEquals(PlaybackStateMachine.IDLE, state.getState());
+	}
+
+	@Test
+	public void transition_failsFromAnotherState() {
+		PlaybackStateMachine state = new PlaybackStateMachine();
+		long generation = state.begin();
+
+		assertFalse(state.transition(generation, PlaybackStateMachine.PLAYING, PlaybackStateMachine.WAITING_INTERVAL));
+		assertFalse(state.transition(generation, PlaybackStateMachine.IDLE, PlaybackStateMachine.PLAYING));
+		assertEquals(PlaybackStateMachine.STARTING, state.getState());
+	}
+
+	@Test
+	public void beginAndStop_supersedeOlderGenerations() {
+		PlaybackStateMachine state = new PlaybackStateMachine();
+		long first = state.begin();
+		long second = state.begin();
+		assertEquals(first + 1, second);
+		assertFalse(state.isCurrent(first));
+
+		// A stale loop iteration can't move the new start along
+		assertFalse(state.transition(first, PlaybackStateMachine.STARTING, PlaybackStateMachine.PLAYING));
+		assertEquals(PlaybackStateMachine.STARTING, state.getState());
+
+		assertTrue(state.transition(second, PlaybackStateMachine.STARTING, PlaybackStateMachine.PLAYING));
+		long stopped = state.stop();
+		assertFalse(state.transition(second, PlaybackStateMachine.PLAYING, PlaybackStateMachine.WAITING_INTERVAL));
+		assertTrue(state.isCurrent(stopped));
+	}
+
+	@Test
+	public void generation_wrapsToZero() {
+		PlaybackStateMachine state = new PlaybackStateMachine(MAX_GENERATION, PlaybackStateMachine.PLAYING);
+		assertTrue(state.isCurrent(MAX_GENERATION));
+
+		long generation = state.begin();
+		assertEquals(0, generation);
+		assertTrue(state.isCurrent(generation));
+		assertFalse(state.isCurrent(MAX_GENERATION));
+		assertFalse(state.transition(MAX_GENERATION, PlaybackStateMachine.STARTING, PlaybackStateMachine.PLAYING));
+		assertTrue(state.transition(generation, PlaybackStateMachine.STARTING, PlaybackStateMachine.PLAYING));
+	}
+
+	@Test
+	public void concurrentBegins_eachGetADistinctGeneration() throws InterruptedException {
+		PlaybackStateMachine state = new PlaybackStateMachine();
+		int threads = 4;
+		int begins = 10000;
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(() -> {
+				for (int j = 0; j < begins; j++)
+					state.begin();
+			});
+			workers[i].start();
+		}
+		for (Thread worker : workers)
+			worker.join();
+
+		assertEquals(threads * begins, state.getGeneration());
+	}
+}
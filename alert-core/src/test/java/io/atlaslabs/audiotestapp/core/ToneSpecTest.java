@@ -0,0 +1,71 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ToneSpecTest {
+	private static final float DELTA = 1e-6f;
+
+	@Test
+	public void presets_areParsedByName() {
+		assertEquals(ToneSpec.WOOP, ToneSpec.parse(" Woop ").toString());
+		assertEquals(ToneSpec.CHIME, ToneSpec.parse("chime").toString());
+		assertEquals(5, ToneSpec.parse("beeps").getSegmentCount());
+		assertEquals(1020, ToneSpec.parse("woop").getDurationMs());
+	}
+
+	@Test
+	public void segment_readsEveryField() {
+		ToneSpec spec = ToneSpec.parse("sq440+660:250@0.5~80, 300>900:100, 0:50");
+		assertEquals(3, spec.getSegmentCount());
+
+		ToneSpec.Segment chord = spec.getSegment(0);
+		assertEquals(ToneSpec.WAVE_SQUARE, chord.getWave());
+		assertEquals(2, chord.getPartialCount());
+		assertEquals(440, chord.getStartHz(0), DELTA);
+		assertEquals(660, chord.getEndHz(1), DELTA);
+		assertEquals(250, chord.getDurationMs());
+		assertEquals(0.5f, chord.getLevel(), DELTA);
+		assertEquals(80, chord.getDecayMs(), DELTA);
+
+		ToneSpec.Segment sweep = spec.getSegment(1);
+		assertEquals(ToneSpec.WAVE_SINE, sweep.getWave());
+		assertEquals(300, sweep.getStartHz(0), DELTA);
+		assertEquals(900, sweep.getEndHz(0), DELTA);
+		assertEquals(ToneSpec.DEFAULT_LEVEL, sweep.getLevel(), DELTA);
+
+		ToneSpec.Segment rest = spec.getSegment(2);
+		assertEquals(0, rest.getLevel(), DELTA);
+
+		assertEquals(400, spec.getDurationMs());
+		assertEquals(400 * 48, spec.getFrameCount(48000));
+	}
+
+	@Test
+	public void malformedSpecs_areRejected() {
+		String[] invalid = {
+				"",
+				"440",
+				"440:",
+				"abc:100",
+				"440:100@",
+				"440:100@1.5",
+				"440:100@-0.1",
+				"440:-100",
+				"440:100~-5",
+				"100+200+300+400+500:100",
+				"440:100,,880:100",
+		};
+
+		for (String spec : invalid) {
+			try {
+				ToneSpec.parse(spec);
+				fail("Accepted \"" + spec + "\"");
+			} catch (IllegalArgumentException expected) {
+				// Reported with the offending segment
+			}
+		}
+	}
+}
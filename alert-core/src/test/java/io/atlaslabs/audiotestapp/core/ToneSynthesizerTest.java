@@ -0,0 +1,70 @@
+package io.atlaslabs.audiotestapp.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ToneSynthesizerTest {
+	private static final int SAMPLE_RATE = 44100;
+
+	@Test
+	public void render_coversTheWholeSpec() {
+		ToneSpec spec = ToneSpec.parse("woop");
+		short[] samples = ToneSynthesizer.render(spec, SAMPLE_RATE);
+
+		assertEquals(spec.getFrameCount(SAMPLE_RATE), samples.length);
+	}
+
+	@Test
+	public void blockSize_doesNotChangeOutput() {
+		ToneSpec spec = ToneSpec.parse("beeps");
+		short[] whole = ToneSynthesizer.render(spec, SAMPLE_RATE);
+
+		ToneSynthesizer synthesizer = new ToneSynthesizer(spec, SAMPLE_RATE);
+		short[] blocks = new short[whole.length];
+		int offset = 0;
+		int rendered;
+		while ((rendered = synthesizer.render(blocks, offset, Math.min(997, blocks.length - offset))) > 0)
+			offset += rendered;
+
+		assertEquals(whole.length, offset);
+		for (int i = 0; i < whole.length; i++)
+			assertEquals(whole[i], blocks[i]);
+	}
+
+	@Test
+	public void lowSquare_keepsOddHarmonics() {
+		short[] samples = ToneSynthesizer.render(ToneSpec.parse("sq500:500"), SAMPLE_RATE);
+
+		// A square wave's third harmonic is a third of the fundamental
+		double ratio = magnitude(samples, 1500) / magnitude(samples, 500);
+		assertEquals(1.0 / 3, ratio, 0.02);
+	}
+
+	@Test
+	public void highSquare_doesNotAlias() {
+		// The 3rd harmonic of 8 kHz is above Nyquist and would fold back to 20.1 kHz
+		short[] samples = ToneSynthesizer.render(ToneSpec.parse("sq8000:500"), SAMPLE_RATE);
+
+		double fundamental = magnitude(samples, 8000);
+		assertTrue(magnitude(samples, SAMPLE_RATE - 3 * 8000) < fundamental * 1e-3);
+		assertTrue(magnitude(samples, 5 * 8000 - SAMPLE_RATE) < fundamental * 1e-3);
+	}
+
+	/**
+	 * Goertzel magnitude of {@code hz} in {@code samples}
+	 */
+	private static double magnitude(short[] samples, double hz) {
+		double coefficient = 2 * Math.cos(2 * Math.PI * hz / SAMPLE_RATE);
+		double previous = 0;
+		double beforePrevious = 0;
+		for (short sample : samples) {
+			double current = sample + coefficient * previous - beforePrevious;
+			beforePrevious = previous;
+			previous = current;
+		}
+
+		return Math.sqrt(previous * previous + beforePrevious * beforePrevious - coefficient * previous * beforePrevious);
+	}
+}
@@ -0,0 +1,55 @@
+package io.atlaslabs.audiotestapp;
+
+import android.app.Application;
+
+import java.util.Locale;
+
+import io.atlaslabs.audiotestapp.core.IAlertPlayer;
+import io.atlaslabs.audiotestapp.util.Utils;
+import timber.log.Timber;
+
+/**
+ * Selects which {@link IAlertPlayer} implementation the app uses. Configured by the
+ * ALERT_ENGINE string resource.
+ * <p>
+ * The default stays {@link #RINGTONE}. The other engines scale the samples instead of setting the
+ * alarm stream volume, so they change how loud an alert is on devices already in the field. They
+ * are switched on per build until that has been checked on the target hardware. The default path
+ * still gets the warm-up, which leaves the alert ringtone cached with its player prepared.
+ */
+public enum AlertEngine {
+	RINGTONE,
+	STATIC_TRACK,
+	SOUND_POOL,
+	// Loops with sample-accurate intervals rendered into one open stream
+	STREAM;
+
+	/**
+	 * Parses an engine name, falling back to {@link #RINGTONE} for unknown values.
+	 */
+	public static AlertEngine fromName(String name) {
+		try {
+			return valueOf(name.trim().toUpperCase(Locale.US));
+		} catch (Exception e) {
+			Timber.w("Unknown alert engine \"%s\"; using %s", name, RINGTONE);
+			return RINGTONE;
+		}
+	}
+
+	/**
+	 * Creates the player for this engine. Engines that need API 21 fall back to the Ringtone player on older devices.
+	 */
+	public IAlertPlayer create(Application app) {
+		if (this == RINGTONE || !Utils.isAtLeastL())
+			return new AlertPlayer(app);
+
+		if (this == SOUND_POOL)
+			return new SoundPoolAlertPlayer(app);
+
+		PcmAlertCache.setup(app);
+		if (this == STREAM)
+			return new StreamingAlertPlayer(app);
+
+		return new StaticTrackAlertPlayer(app);
+	}
+}
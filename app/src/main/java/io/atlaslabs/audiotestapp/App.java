@@ -3,10 +3,18 @@ package io.atlaslabs.audiotestapp;
 import android.app.Application;
 import android.os.Build;
 
+import io.atlaslabs.audiotestapp.core.AlertArbiter;
+import io.atlaslabs.audiotestapp.core.IAlertPlayer;
+import io.atlaslabs.audiotestapp.core.SoundSettings;
+import io.atlaslabs.audiotestapp.util.Utils;
+import io.reactivex.disposables.Disposable;
 import timber.log.Timber;
 
 public class App extends Application {
-	static IAlertPlayer mAlertPlayer = null;
+	private static volatile AlertArbiter mAlertPlayer = null;
+	private static float mDefaultVolume;
+	private static float mMaxVolume;
+	private Disposable mWarmup = null;
 
 	@Override
 	public void onCreate() {
@@ -19,18 +27,91 @@ public class App extends Application {
 		if (BuildConfig.DEBUG)
 			Timber.plant(new Timber.DebugTree());
 
-		mAlertPlayer = new AlertPlayer(this);
-		SoundTest.setup(this);
-		UserNotificationManager.setup(this);
+		// Parsed here, as main-thread callers build settings before the alert player exists
+		mDefaultVolume = Float.parseFloat(getString(R.string.DEFAULT_VOLUME));
+		mMaxVolume = Float.parseFloat(getString(R.string.MAX_VOLUME));
+
+		// Nothing below runs here; each subsystem is created on first use or once the main thread is idle
+		Startup.setup();
+		Startup startup = Startup.getInstance();
+
+		startup.register(Startup.AUDIO_POLICY, () -> AudioPolicyState.setup(this));
+		startup.register(Startup.ROUTE_TRACKER, () -> {
+			if (Utils.isAtLeastM())
+				AudioRouteTracker.setup(this);
+		});
+		startup.register(Startup.POLICY_RECOVERY, () -> AudioPolicyTransaction.rollbackAbandoned(this),
+				Startup.AUDIO_POLICY);
+		startup.register(Startup.LOUDNESS_CACHE, () -> {
+			if (Utils.isAtLeastL())
+				LoudnessCache.setup(this);
+		});
+		startup.register(Startup.PCM_DISK_CACHE, () -> {
+			if (Utils.isAtLeastL())
+				PcmDiskCache.setup(this);
+		});
+		startup.register(Startup.ALERT_PLAYER, () -> {
+			AlertEngine engine = AlertEngine.fromName(getString(R.string.ALERT_ENGINE));
+			mAlertPlayer = new AlertArbiter(engine.create(this));
+			Timber.i("Using %s alert engine", engine);
+		}, Startup.POLICY_RECOVERY, Startup.ROUTE_TRACKER, Startup.LOUDNESS_CACHE, Startup.PCM_DISK_CACHE);
+		startup.register(Startup.RINGTONE_CACHE, () -> RingtoneCache.setup(this));
+		// SoundTest and UserNotificationManager are used from the main thread. Their constructors are cheap and the
+		// subsystems they play through are looked up on use, off the main thread, so they depend on nothing deferred
+		startup.register(Startup.SOUND_TEST, () -> SoundTest.setup(this));
+		startup.register(Startup.AUDIO_SCHEDULER, AudioScheduler::setup);
+		startup.register(Startup.MEDIA_PLAYER_POOL, () -> {
+			if (Utils.isAtLeastL())
+				MediaPlayerPool.setup(this);
+		}, Startup.AUDIO_SCHEDULER);
+		startup.register(Startup.NOTIFICATIONS, () -> UserNotificationManager.setup(this));
+		// Decodes the alert sounds and opens the output off the main thread, so the first alert costs the same as later ones
+		startup.register(Startup.AUDIO_WARMUP, () -> mWarmup = AudioWarmup.start(this, mAlertPlayer),
+				Startup.ALERT_PLAYER, Startup.RINGTONE_CACHE, Startup.MEDIA_PLAYER_POOL);
+
+		startup.initializeDeferred();
 	}
 
 	@Override
 	public void onTerminate() {
-		UserNotificationManager.getInstance().cleanup();
+		Startup startup = Startup.getInstance();
+		startup.cancelDeferred();
+
+		if (mWarmup != null)
+			mWarmup.dispose();
+		if (startup.isInitialized(Startup.NOTIFICATIONS))
+			UserNotificationManager.getInstance().cleanup();
+		if (startup.isInitialized(Startup.RINGTONE_CACHE))
+			RingtoneCache.getInstance().clear();
+		if (startup.isInitialized(Startup.MEDIA_PLAYER_POOL) && Utils.isAtLeastL())
+			MediaPlayerPool.getInstance().release();
+		// After the pool, whose release runs on it
+		if (startup.isInitialized(Startup.AUDIO_SCHEDULER))
+			AudioScheduler.getInstance().shutdown();
+		if (startup.isInitialized(Startup.AUDIO_POLICY))
+			AudioPolicyState.getInstance().cleanup();
+		if (startup.isInitialized(Startup.ROUTE_TRACKER) && AudioRouteTracker.getInstance() != null)
+			AudioRouteTracker.getInstance().cleanup();
 		super.onTerminate();
 	}
 
 	public static IAlertPlayer GetAlertPlayer() {
+		Startup.require(Startup.ALERT_PLAYER);
+		return mAlertPlayer;
+	}
+
+	/**
+	 * Creates alert settings bounded by the DEFAULT_VOLUME and MAX_VOLUME resources
+	 */
+	public static SoundSettings CreateSoundSettings(float volume, boolean looping, int interval_sec) {
+		return new SoundSettings(mDefaultVolume, mMaxVolume, volume, looping, interval_sec);
+	}
+
+	/**
+	 * Same instance as {@link #GetAlertPlayer()}, for callers that supply a priority and source ID
+	 */
+	public static AlertArbiter GetAlertArbiter() {
+		Startup.require(Startup.ALERT_PLAYER);
 		return mAlertPlayer;
 	}
 }
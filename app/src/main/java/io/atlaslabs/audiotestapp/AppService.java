@@ -3,6 +3,7 @@ package io.atlaslabs.audiotestapp;
 import android.app.Notification;
 import android.app.Service;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Binder;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -15,11 +16,17 @@ import android.util.LogPrinter;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import io.atlaslabs.audiotestapp.util.Utils;
 import io.reactivex.disposables.CompositeDisposable;
 import timber.log.Timber;
 
 public class AppService extends Service {
 	public static final String EXTRA_MESSAGE_ID = "message_id";
+	// START_SOAK_TEST options; at least one of iterations and hours is required
+	public static final String EXTRA_SOAK_ITERATIONS = "soak_iterations";
+	public static final String EXTRA_SOAK_HOURS = "soak_hours";
+	public static final String EXTRA_SOAK_INTERVAL_MS = "soak_interval_ms";
+	public static final String EXTRA_SOAK_URI = "soak_uri";
 
 	private static final int MESSAGE_ID_INVALID = -1;
 	private final CompositeDisposable mDisposables = new CompositeDisposable();
@@ -27,6 +34,8 @@ public class AppService extends Service {
 	private HandlerThread mHandlerThread;
 	private ServiceHandler mServiceHandler;
 	private volatile boolean mRunService = false;
+	// Only touched on the service handler thread
+	private SoakTest mSoakTest = null;
 
 	private void start(boolean foreground) {
 		mRunService = true;
@@ -37,8 +46,8 @@ public class AppService extends Service {
 		startForeground(UserNotificationManager.PERSISTENT_NOTIFICATION_ID, n);
 	}
 
-	private void sendMessage(int msgId, int startId) {
-		Message msg = mServiceHandler.obtainMessage(msgId);
+	private void sendMessage(int msgId, int startId, Intent intent) {
+		Message msg = mServiceHandler.obtainMessage(msgId, intent);
 		msg.arg1 = startId;
 
 		boolean success = mServiceHandler.sendMessage(msg);
@@ -62,7 +71,7 @@ public class AppService extends Service {
 			return Service.START_STICKY;
 
 		int msgId = intent.getIntExtra(EXTRA_MESSAGE_ID, MESSAGE_ID_INVALID);
-		sendMessage(msgId, startId);
+		sendMessage(msgId, startId, intent);
 
 		// If the service gets killed, be sure it's started again with the previous intent
 		return Service.START_REDELIVER_INTENT;
@@ -89,6 +98,8 @@ public class AppService extends Service {
 	@Override
 	public void onDestroy() {
 		mDisposables.clear();
+		if (mSoakTest != null)
+			mServiceHandler.post(this::stopSoakTest);
 
 		// Terminate thread looper when all remaining messages are handled
 		mHandlerThread.quitSafely();
@@ -108,6 +119,44 @@ public class AppService extends Service {
 		int START_FOREGROUND = 2;
 		int DUMP_STATE = 3;
 		int PLAY_MEDIA = 4;
+		int START_SOAK_TEST = 5;
+		int STOP_SOAK_TEST = 6;
+	}
+
+	private void startSoakTest(Intent intent) {
+		if (!Utils.isAtLeastL())
+			return;
+
+		if (mSoakTest != null && mSoakTest.isRunning()) {
+			Timber.w("Soak test already running: %s", mSoakTest.getStatus());
+			return;
+		}
+
+		int iterations = intent.getIntExtra(EXTRA_SOAK_ITERATIONS, 0);
+		float hours = intent.getFloatExtra(EXTRA_SOAK_HOURS, 0);
+		long intervalMs = intent.getLongExtra(EXTRA_SOAK_INTERVAL_MS,
+				Long.parseLong(getString(R.string.SOAK_INTERVAL_MS)));
+		Uri soundUri = intent.getParcelableExtra(EXTRA_SOAK_URI);
+		if (soundUri == null)
+			soundUri = PcmAlertCache.getResourceUri(this, R.raw.woopwoop);
+
+		if (iterations <= 0 && hours <= 0) {
+			Timber.e("Soak test needs %s or %s", EXTRA_SOAK_ITERATIONS, EXTRA_SOAK_HOURS);
+			return;
+		}
+
+		// Keeps the process alive for an unattended run
+		start(true);
+		mSoakTest = new SoakTest(this, soundUri, iterations, (long) (hours * 3600000), intervalMs);
+		mSoakTest.start();
+	}
+
+	private void stopSoakTest() {
+		if (mSoakTest == null)
+			return;
+
+		mSoakTest.stop();
+		mSoakTest = null;
 	}
 
 	private final class ServiceHandler extends Handler {
@@ -125,6 +174,41 @@ public class AppService extends Service {
 				case MSG.START_SERVICE:
 					start(false);
 					break;
+				case MSG.DUMP_STATE:
+					// Only components already initialized; dumping must not initialize anything
+					Startup startup = Startup.getInstance();
+					if (startup.isInitialized(Startup.ALERT_PLAYER))
+						Timber.i("Alert player metrics:\n%s", App.GetAlertPlayer().getMetrics().dump());
+					if (startup.isInitialized(Startup.RINGTONE_CACHE))
+						Timber.i("Ringtone cache: %s", RingtoneCache.getInstance().dump());
+					if (startup.isInitialized(Startup.NOTIFICATIONS)) {
+						Timber.i("Notification updates: %s", UserNotificationManager.getInstance().dumpNotificationUpdates());
+						Timber.i("Playback requests: %s", UserNotificationManager.getInstance().dumpPlayback());
+					}
+					if (Utils.isAtLeastL()) {
+						if (startup.isInitialized(Startup.LOUDNESS_CACHE))
+							Timber.i("Loudness cache: %s", LoudnessCache.getInstance().dump());
+						if (startup.isInitialized(Startup.PCM_DISK_CACHE))
+							Timber.i("PCM disk cache: %s", PcmDiskCache.getInstance().dump());
+						if (startup.isInitialized(Startup.MEDIA_PLAYER_POOL))
+							Timber.i("Media player pool: %s", MediaPlayerPool.getInstance().dump());
+					}
+					Timber.i("Startup trace:\n%s", startup.dump());
+					if (startup.isInitialized(Startup.AUDIO_SCHEDULER))
+						Timber.i("Audio scheduler: %s", AudioScheduler.getInstance().dump());
+					if (Utils.isAtLeastM() && startup.isInitialized(Startup.ROUTE_TRACKER) && AudioRouteTracker.getInstance() != null)
+						Timber.i("Audio outputs: %s", AudioRouteTracker.getInstance().get());
+					if (startup.isInitialized(Startup.SOUND_TEST))
+						SoundTest.getInstance().dumpDiagnostics();
+					if (mSoakTest != null)
+						Timber.i("Soak test: %s", mSoakTest.getStatus());
+					break;
+				case MSG.START_SOAK_TEST:
+					startSoakTest((Intent) msg.obj);
+					break;
+				case MSG.STOP_SOAK_TEST:
+					stopSoakTest();
+					break;
 				case MSG.STOP_SERVICE:
 					// Set flag to stop running the processing loop. Service will stop itself when this flag is no longer set.
 					mRunService = false;
@@ -0,0 +1,261 @@
+package io.atlaslabs.audiotestapp;
+
+import android.app.Application;
+import android.app.NotificationManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.media.AudioManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.provider.Settings;
+
+import java.util.Locale;
+
+import io.atlaslabs.audiotestapp.util.Utils;
+import timber.log.Timber;
+
+/**
+ * Cached view of the system state that decides whether the alert may change volume: Do Not
+ * Disturb (zen mode / interruption filter), notification policy access, ringer mode and stream
+ * volumes. Each value costs a binder or content provider call to read, so it is read once and
+ * then kept current by a {@link ContentObserver} and the matching system broadcasts. Readers get
+ * an immutable {@link Snapshot} without any IPC.
+ */
+public final class AudioPolicyState {
+	// Not exposed by the SDK before API 23
+	static final String ZEN_MODE = "zen_mode";
+	static final int ZEN_MODE_NO_INTERRUPTIONS = 2;
+	static final int ZEN_MODE_UNKNOWN = -1;
+	private static final String VOLUME_CHANGED_ACTION = "android.media.VOLUME_CHANGED_ACTION";
+	// Highest AudioManager.STREAM_* constant we track, inclusive
+	private static final int MAX_STREAM_TYPE = AudioManager.STREAM_NOTIFICATION;
+	private static final int[] TRACKED_STREAMS = {AudioManager.STREAM_RING, AudioManager.STREAM_MUSIC,
+			AudioManager.STREAM_ALARM, AudioManager.STREAM_NOTIFICATION};
+
+	private static AudioPolicyState mInstance = null;
+	private final Context mContext;
+	private final AudioManager mAudioManager;
+	private final NotificationManager mNotificationManager;
+	private final HandlerThread mHandlerThread;
+	private final Handler mHandler;
+	private final int[] mMaxVolumes = new int[MAX_STREAM_TYPE + 1];
+	private volatile Snapshot mSnapshot;
+
+	private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			Timber.v("Audio policy broadcast %s", intent.getAction());
+			refresh();
+		}
+	};
+
+	private AudioPolicyState(Application app) {
+		mContext = app;
+		mAudioManager = (AudioManager) app.getSystemService(Context.AUDIO_SERVICE);
+		mNotificationManager = (NotificationManager) app.getSystemService(Context.NOTIFICATION_SERVICE);
+
+		// Maximum volumes are fixed for the life of the process
+		for (int stream : TRACKED_STREAMS)
+			mMaxVolumes[stream] = mAudioManager.getStreamMaxVolume(stream);
+
+		mSnapshot = readSnapshot();
+
+		// Invalidations are handled off the main thread so the refresh IPC never delays the UI
+		mHandlerThread = new HandlerThread(AudioPolicyState.class.getSimpleName());
+		mHandlerThread.start();
+		mHandler = new Handler(mHandlerThread.getLooper());
+
+		ContentObserver observer = new ContentObserver(mHandler) {
+			@Override
+			public void onChange(boolean selfChange, Uri uri) {
+				refresh();
+			}
+		};
+
+		Uri zenModeUri = Settings.Global.getUriFor(ZEN_MODE);
+		app.getContentResolver().registerContentObserver(zenModeUri, false, observer);
+
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(AudioManager.RINGER_MODE_CHANGED_ACTION);
+		filter.addAction(VOLUME_CHANGED_ACTION);
+		if (Utils.isAtLeastM()) {
+			filter.addAction(NotificationManager.ACTION_INTERRUPTION_FILTER_CHANGED);
+			filter.addAction(NotificationManager.ACTION_NOTIFICATION_POLICY_ACCESS_GRANTED_CHANGED);
+		}
+
+		app.registerReceiver(mReceiver, filter, null, mHandler);
+	}
+
+	public static void setup(Application app) {
+		if (mInstance != null)
+			return;
+
+		mInstance = new AudioPolicyState(app);
+	}
+
+	public static AudioPolicyState getInstance() {
+		Startup.require(Startup.AUDIO_POLICY);
+		return mInstance;
+	}
+
+	/**
+	 * Returns the latest cached state. Never performs IPC.
+	 */
+	public Snapshot get() {
+		return mSnapshot;
+	}
+
+	public void cleanup() {
+		mContext.unregisterReceiver(mReceiver);
+		mHandlerThread.quitSafely();
+	}
+
+	/**
+	 * Re-reads the system state. Invoked by the observers; safe to call from any thread.
+	 */
+	void refresh() {
+		Snapshot snapshot = readSnapshot();
+		synchronized (this) {
+			mSnapshot = snapshot;
+		}
+
+		Timber.v("Audio policy state refreshed: %s", mSnapshot);
+	}
+
+	/**
+	 * Records a stream volume this process just wrote, so the cache is correct before the
+	 * system broadcast arrives.
+	 */
+	synchronized void onStreamVolumeWritten(int streamType, int volume) {
+		Snapshot s = mSnapshot;
+		int[] volumes = s.mVolumes.clone();
+		if (streamType >= 0 && streamType < volumes.length)
+			volumes[streamType] = volume;
+
+		mSnapshot = new Snapshot(s.mZenMode, s.mInterruptionFilter, s.mPolicyAccessGranted, s.mRingerMode, volumes, s.mMaxVolumes);
+	}
+
+	synchronized void onRingerModeWritten(int ringerMode) {
+		Snapshot s = mSnapshot;
+		mSnapshot = new Snapshot(s.mZenMode, s.mInterruptionFilter, s.mPolicyAccessGranted, ringerMode, s.mVolumes, s.mMaxVolumes);
+	}
+
+	synchronized void onInterruptionFilterWritten(int interruptionFilter) {
+		Snapshot s = mSnapshot;
+		mSnapshot = new Snapshot(s.mZenMode, interruptionFilter, s.mPolicyAccessGranted, s.mRingerMode, s.mVolumes, s.mMaxVolumes);
+	}
+
+	private Snapshot readSnapshot() {
+		int zenMode = ZEN_MODE_UNKNOWN;
+		int interruptionFilter = 0;
+		boolean policyAccessGranted = false;
+
+		if (Utils.isAtLeastM()) {
+			try {
+				interruptionFilter = mNotificationManager.getCurrentInterruptionFilter();
+				policyAccessGranted = mNotificationManager.isNotificationPolicyAccessGranted();
+			} catch (Exception e) {
+				Timber.e(e, "Error reading interruption filter: %s", e.getLocalizedMessage());
+				interruptionFilter = NotificationManager.INTERRUPTION_FILTER_UNKNOWN;
+			}
+		} else {
+			try {
+				zenMode = Settings.Global.getInt(mContext.getContentResolver(), ZEN_MODE);
+			} catch (Exception e) {
+				zenMode = ZEN_MODE_UNKNOWN;
+			}
+		}
+
+		int[] volumes = new int[MAX_STREAM_TYPE + 1];
+		for (int stream : TRACKED_STREAMS)
+			volumes[stream] = mAudioManager.getStreamVolume(stream);
+
+		return new Snapshot(zenMode, interruptionFilter, policyAccessGranted, mAudioManager.getRingerMode(),
+				volumes, mMaxVolumes);
+	}
+
+	/**
+	 * Immutable copy of the audio policy state at one point in time.
+	 */
+	public static final class Snapshot {
+		private final int mZenMode;
+		private final int mInterruptionFilter;
+		private final boolean mPolicyAccessGranted;
+		private final int mRingerMode;
+		private final int[] mVolumes;
+		private final int[] mMaxVolumes;
+
+		private Snapshot(int zenMode, int interruptionFilter, boolean policyAccessGranted, int ringerMode,
+						 int[] volumes, int[] maxVolumes) {
+			mZenMode = zenMode;
+			mInterruptionFilter = interruptionFilter;
+			mPolicyAccessGranted = policyAccessGranted;
+			mRingerMode = ringerMode;
+			mVolumes = volumes;
+			mMaxVolumes = maxVolumes;
+		}
+
+		/**
+		 * Settings.Global zen_mode; only read before API 23, otherwise {@link #ZEN_MODE_UNKNOWN}
+		 */
+		public int getZenMode() {
+			return mZenMode;
+		}
+
+		/**
+		 * NotificationManager interruption filter; only read on API 23 and newer
+		 */
+		public int getInterruptionFilter() {
+			return mInterruptionFilter;
+		}
+
+		public boolean isPolicyAccessGranted() {
+			return mPolicyAccessGranted;
+		}
+
+		public int getRingerMode() {
+			return mRingerMode;
+		}
+
+		public int getStreamVolume(int streamType) {
+			return streamType >= 0 && streamType < mVolumes.length ? mVolumes[streamType] : 0;
+		}
+
+		public int getStreamMaxVolume(int streamType) {
+			return streamType >= 0 && streamType < mMaxVolumes.length ? mMaxVolumes[streamType] : 0;
+		}
+
+		/**
+		 * True if the stream is at volume 0, where no per-player gain can make it audible
+		 */
+		public boolean isStreamMuted(int streamType) {
+			return getStreamVolume(streamType) == 0;
+		}
+
+		/**
+		 * True if total silence is in effect before API 23, where it can't be overridden
+		 */
+		public boolean isTotalSilence() {
+			return !Utils.isAtLeastM() && (mZenMode == ZEN_MODE_NO_INTERRUPTIONS || mZenMode == ZEN_MODE_UNKNOWN);
+		}
+
+		/**
+		 * True on API 23 and newer if Do Not Disturb blocks all sound
+		 */
+		public boolean isInterruptionFilterBlocking() {
+			return Utils.isAtLeastM() && (mInterruptionFilter == NotificationManager.INTERRUPTION_FILTER_NONE
+					|| mInterruptionFilter == NotificationManager.INTERRUPTION_FILTER_UNKNOWN);
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.US, "zen=%d, filter=%d, policyAccess=%s, ringer=%d, alarm=%d/%d",
+					mZenMode, mInterruptionFilter, mPolicyAccessGranted, mRingerMode,
+					getStreamVolume(AudioManager.STREAM_ALARM), getStreamMaxVolume(AudioManager.STREAM_ALARM));
+		}
+	}
+}
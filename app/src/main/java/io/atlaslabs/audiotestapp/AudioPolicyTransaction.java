@@ -0,0 +1,250 @@
+package io.atlaslabs.audiotestapp;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.AudioManager;
+
+import java.util.TreeSet;
+
+import io.atlaslabs.audiotestapp.util.Utils;
+import timber.log.Timber;
+
+/**
+ * Groups the system changes an alert makes (interruption filter, stream volume, ringer mode)
+ * so they are applied in one pass and undone together.
+ * <p>
+ * Only values that differ from the cached {@link AudioPolicyState} are written, and the prior
+ * value of everything written is journaled to shared preferences before the write. The journal
+ * lets {@link #rollbackAbandoned(Context)} restore the device after the process died mid-alert,
+ * so a crash never leaves it muted or stuck in Do Not Disturb. Each transaction journals under its
+ * own key prefix, so transactions of several players never overwrite or clear each other's entries.
+ * <p>
+ * The journal is written with {@link SharedPreferences.Editor#apply()}, which queues the disk write
+ * instead of blocking the alert start. A process killed in the few milliseconds between a change
+ * and that write leaves the change without a journal entry to roll it back.
+ */
+public final class AudioPolicyTransaction {
+	private static final String PREFS_NAME = "audio_policy_transaction";
+	// Next transaction ID; an ID is taken by a transaction's first journal entry
+	private static final String KEY_NEXT_ID = "next_id";
+	private static final String KEY_STREAM_TYPE = "stream_type";
+	private static final String KEY_VOLUME = "volume";
+	private static final String KEY_RINGER_MODE = "ringer_mode";
+	private static final String KEY_INTERRUPTION_FILTER = "interruption_filter";
+	private static final int NOT_CHANGED = Integer.MIN_VALUE;
+
+	private final AudioManager mAudioManager;
+	private final NotificationManager mNotificationManager;
+	private final SharedPreferences mJournal;
+	private final int mStreamType;
+
+	// Prior values of everything this transaction changed, or NOT_CHANGED
+	private int mPriorVolume = NOT_CHANGED;
+	private int mPriorRingerMode = NOT_CHANGED;
+	private int mPriorInterruptionFilter = NOT_CHANGED;
+	// Prefix of this transaction's journal keys; null until it journals something
+	private String mJournalPrefix = null;
+
+	public AudioPolicyTransaction(Context context, int streamType) {
+		mAudioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+		mNotificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+		mJournal = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+		mStreamType = streamType;
+	}
+
+	/**
+	 * Restores any changes journaled by a transaction whose process died before it was rolled back.
+	 * Call once at application start, after {@link AudioPolicyState#setup}.
+	 */
+	public static void rollbackAbandoned(Context context) {
+		SharedPreferences journal = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+		TreeSet<Integer> ids = new TreeSet<>();
+		for (String key : journal.getAll().keySet()) {
+			int separator = key.indexOf('.');
+			if (separator > 0 && key.endsWith("." + KEY_STREAM_TYPE)) {
+				try {
+					ids.add(Integer.parseInt(key.substring(0, separator)));
+				} catch (NumberFormatException ignored) {
+					// Not a transaction entry
+				}
+			}
+		}
+
+		// Newest first: an older transaction's prior values predate the newer ones' changes
+		for (int id : ids.descendingSet()) {
+			String prefix = id + ".";
+			AudioPolicyTransaction transaction = new AudioPolicyTransaction(context,
+					journal.getInt(prefix + KEY_STREAM_TYPE, AudioManager.STREAM_ALARM));
+			transaction.mJournalPrefix = prefix;
+			transaction.mPriorVolume = journal.getInt(prefix + KEY_VOLUME, NOT_CHANGED);
+			transaction.mPriorRingerMode = journal.getInt(prefix + KEY_RINGER_MODE, NOT_CHANGED);
+			transaction.mPriorInterruptionFilter = journal.getInt(prefix + KEY_INTERRUPTION_FILTER, NOT_CHANGED);
+
+			Timber.w("Rolling back audio policy changes abandoned by a previous process (transaction %d)", id);
+			transaction.rollback();
+		}
+
+		// No transaction of this process has journaled yet, so the IDs can start over
+		journal.edit().clear().apply();
+	}
+
+	public boolean isActive() {
+		return mPriorVolume != NOT_CHANGED || mPriorRingerMode != NOT_CHANGED || mPriorInterruptionFilter != NOT_CHANGED;
+	}
+
+	/**
+	 * Applies the target volume and ringer mode, clearing Do Not Disturb first where that is
+	 * required and permitted. May be called again while active; the original prior values are kept.
+	 * On failure, everything applied so far is rolled back.
+	 *
+	 * @return false if nothing could be applied or an error occurred
+	 */
+	public synchronized boolean apply(int volume, int ringerMode) {
+		AudioPolicyState.Snapshot policy = AudioPolicyState.getInstance().get();
+		if (policy.isTotalSilence()) {
+			Timber.w("Total silence in effect; not changing volume or ringer mode");
+			return false;
+		}
+
+		boolean mayChangeVolume = true;
+		boolean mayChangeRinger = true;
+		boolean clearFilter = false;
+
+		if (Utils.isAtLeastM()) {
+			boolean filterAll = policy.getInterruptionFilter() == NotificationManager.INTERRUPTION_FILTER_ALL;
+			if (policy.isPolicyAccessGranted()) {
+				clearFilter = !filterAll;
+			} else {
+				mayChangeVolume = !policy.isInterruptionFilterBlocking();
+				mayChangeRinger = false;
+			}
+		}
+
+		try {
+			if (clearFilter) {
+				if (mPriorInterruptionFilter == NOT_CHANGED) {
+					mPriorInterruptionFilter = policy.getInterruptionFilter();
+					journal(KEY_INTERRUPTION_FILTER, mPriorInterruptionFilter);
+				}
+				mNotificationManager.setInterruptionFilter(NotificationManager.INTERRUPTION_FILTER_ALL);
+				AudioPolicyState.getInstance().onInterruptionFilterWritten(NotificationManager.INTERRUPTION_FILTER_ALL);
+			}
+
+			if (mayChangeVolume && policy.getStreamVolume(mStreamType) != volume) {
+				if (mPriorVolume == NOT_CHANGED) {
+					mPriorVolume = policy.getStreamVolume(mStreamType);
+					journal(KEY_VOLUME, mPriorVolume);
+				}
+				mAudioManager.setStreamVolume(mStreamType, volume, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
+				AudioPolicyState.getInstance().onStreamVolumeWritten(mStreamType, volume);
+			}
+
+			if (mayChangeRinger && policy.getRingerMode() != ringerMode) {
+				if (mPriorRingerMode == NOT_CHANGED) {
+					mPriorRingerMode = policy.getRingerMode();
+					journal(KEY_RINGER_MODE, mPriorRingerMode);
+				}
+				mAudioManager.setRingerMode(ringerMode);
+				AudioPolicyState.getInstance().onRingerModeWritten(ringerMode);
+			}
+		} catch (Exception e) {
+			Timber.e(e, "Error applying audio policy changes; rolling back: %s", e.getLocalizedMessage());
+			rollback();
+			return false;
+		}
+
+		return mayChangeVolume || mayChangeRinger;
+	}
+
+	/**
+	 * For players that scale their own output: makes {@code volume}, a fraction of the stream's
+	 * maximum volume, the level they play at. A stream below that level is raised to it with
+	 * {@link #apply}; a stream at or above it is left alone and the player attenuates instead.
+	 *
+	 * @return the factor to scale output by at the resulting stream volume, at most 1
+	 */
+	public float applyVolumeFraction(float volume) {
+		AudioPolicyState.Snapshot policy = AudioPolicyState.getInstance().get();
+		float requested = policy.getStreamMaxVolume(mStreamType) * volume;
+		int current = policy.getStreamVolume(mStreamType);
+		if (current < requested) {
+			apply(Math.max(1, Math.round(requested)), AudioManager.RINGER_MODE_NORMAL);
+			return 1.0f;
+		}
+
+		return current > 0 ? requested / current : 1.0f;
+	}
+
+	/**
+	 * Restores every value this transaction changed, in reverse order, and removes its journal entries.
+	 * Values the user has since set back to the prior value are not written again.
+	 */
+	public synchronized void rollback() {
+		if (!isActive())
+			return;
+
+		AudioPolicyState.Snapshot policy = AudioPolicyState.getInstance().get();
+
+		if (mPriorRingerMode != NOT_CHANGED && policy.getRingerMode() != mPriorRingerMode) {
+			try {
+				mAudioManager.setRingerMode(mPriorRingerMode);
+				AudioPolicyState.getInstance().onRingerModeWritten(mPriorRingerMode);
+			} catch (Exception e) {
+				Timber.e(e, "Error restoring ringer mode %d: %s", mPriorRingerMode, e.getLocalizedMessage());
+			}
+		}
+
+		if (mPriorVolume != NOT_CHANGED && policy.getStreamVolume(mStreamType) != mPriorVolume) {
+			try {
+				mAudioManager.setStreamVolume(mStreamType, mPriorVolume, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
+				AudioPolicyState.getInstance().onStreamVolumeWritten(mStreamType, mPriorVolume);
+			} catch (Exception e) {
+				Timber.e(e, "Error restoring stream %d volume %d: %s", mStreamType, mPriorVolume, e.getLocalizedMessage());
+			}
+		}
+
+		if (mPriorInterruptionFilter != NOT_CHANGED && Utils.isAtLeastM()
+				&& policy.getInterruptionFilter() != mPriorInterruptionFilter && policy.isPolicyAccessGranted()) {
+			try {
+				mNotificationManager.setInterruptionFilter(mPriorInterruptionFilter);
+				AudioPolicyState.getInstance().onInterruptionFilterWritten(mPriorInterruptionFilter);
+			} catch (Exception e) {
+				Timber.e(e, "Error restoring interruption filter %d: %s", mPriorInterruptionFilter, e.getLocalizedMessage());
+			}
+		}
+
+		mPriorVolume = NOT_CHANGED;
+		mPriorRingerMode = NOT_CHANGED;
+		mPriorInterruptionFilter = NOT_CHANGED;
+
+		if (mJournalPrefix != null) {
+			mJournal.edit()
+					.remove(mJournalPrefix + KEY_STREAM_TYPE)
+					.remove(mJournalPrefix + KEY_VOLUME)
+					.remove(mJournalPrefix + KEY_RINGER_MODE)
+					.remove(mJournalPrefix + KEY_INTERRUPTION_FILTER)
+					.apply();
+			mJournalPrefix = null;
+		}
+	}
+
+	// apply() updates the in-memory journal at once and writes it to disk in the background; see
+	// the class comment for the window this leaves
+	private void journal(String key, int priorValue) {
+		if (mJournalPrefix == null)
+			mJournalPrefix = takeJournalId(mJournal) + ".";
+
+		mJournal.edit()
+				.putInt(mJournalPrefix + KEY_STREAM_TYPE, mStreamType)
+				.putInt(mJournalPrefix + key, priorValue)
+				.apply();
+	}
+
+	// Serialized across transactions so no two take the same ID
+	private static synchronized int takeJournalId(SharedPreferences journal) {
+		int id = journal.getInt(KEY_NEXT_ID, 0);
+		journal.edit().putInt(KEY_NEXT_ID, id + 1).apply();
+		return id;
+	}
+}
@@ -0,0 +1,350 @@
+package io.atlaslabs.audiotestapp;
+
+import android.app.Application;
+import android.content.Context;
+import android.media.AudioDeviceCallback;
+import android.media.AudioDeviceInfo;
+import android.media.AudioManager;
+import android.media.AudioPlaybackConfiguration;
+import android.media.AudioRouting;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.atlaslabs.audiotestapp.util.Utils;
+import io.reactivex.Observable;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
+import timber.log.Timber;
+
+/**
+ * Event-driven view of the audio outputs: the connected output devices (from an
+ * {@link AudioDeviceCallback}), the device each tracked player is routed to (from
+ * {@link AudioRouting.OnRoutingChangedListener}) and, on API 26 and newer, the active playback
+ * configurations. Readers get an immutable {@link Snapshot} without any IPC. Each change is
+ * timestamped, logged and published as a {@link RouteChange}, so routing problems show up in the
+ * log without enumerating devices on every play. The playback callback also fires for changes
+ * that don't matter here, such as a player pausing, so a playback change is only published when
+ * the active usages or devices differ.
+ */
+@RequiresApi(Build.VERSION_CODES.M)
+public final class AudioRouteTracker {
+	private static AudioRouteTracker mInstance = null;
+	private final AudioManager mAudioManager;
+	private final HandlerThread mHandlerThread;
+	private final Handler mHandler;
+	private final Subject<RouteChange> mChanges = PublishSubject.<RouteChange>create().toSerialized();
+	// Tracked players and their listeners; only touched on the handler thread
+	private final Map<String, AudioRouting> mRoutings = new HashMap<>();
+	private final Map<String, AudioRouting.OnRoutingChangedListener> mRouteListeners = new HashMap<>();
+	private volatile Snapshot mSnapshot = new Snapshot(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyList());
+	// AudioManager.AudioPlaybackCallback on API 26 and newer
+	private Object mPlaybackCallback = null;
+	// Usage, content type and device of each active playback when last published; handler thread only
+	private long[] mPlaybackSignature = new long[0];
+
+	private final AudioDeviceCallback mDeviceCallback = new AudioDeviceCallback() {
+		@Override
+		public void onAudioDevicesAdded(AudioDeviceInfo[] addedDevices) {
+			Map<Integer, AudioDeviceInfo> outputs = new LinkedHashMap<>(mSnapshot.mOutputs);
+			for (AudioDeviceInfo device : addedDevices) {
+				if (device.isSink() && outputs.put(device.getId(), device) == null)
+					publish(RouteChange.DEVICE_ADDED, null, device);
+			}
+
+			mSnapshot = mSnapshot.withOutputs(outputs);
+		}
+
+		@Override
+		public void onAudioDevicesRemoved(AudioDeviceInfo[] removedDevices) {
+			Map<Integer, AudioDeviceInfo> outputs = new LinkedHashMap<>(mSnapshot.mOutputs);
+			for (AudioDeviceInfo device : removedDevices) {
+				if (outputs.remove(device.getId()) != null)
+					publish(RouteChange.DEVICE_REMOVED, null, device);
+			}
+
+			mSnapshot = mSnapshot.withOutputs(outputs);
+		}
+	};
+
+	private AudioRouteTracker(Application app) {
+		mAudioManager = (AudioManager) app.getSystemService(Context.AUDIO_SERVICE);
+
+		mHandlerThread = new HandlerThread(AudioRouteTracker.class.getSimpleName());
+		mHandlerThread.start();
+		mHandler = new Handler(mHandlerThread.getLooper());
+
+		// Reports every connected device as added right away, which seeds the snapshot
+		mAudioManager.registerAudioDeviceCallback(mDeviceCallback, mHandler);
+
+		if (Utils.isAtLeastO()) {
+			AudioManager.AudioPlaybackCallback callback = new AudioManager.AudioPlaybackCallback() {
+				@Override
+				public void onPlaybackConfigChanged(List<AudioPlaybackConfiguration> configs) {
+					mSnapshot = mSnapshot.withPlaybacks(Collections.unmodifiableList(new ArrayList<>(configs)));
+
+					long[] signature = playbackSignature(configs);
+					if (!Arrays.equals(signature, mPlaybackSignature)) {
+						mPlaybackSignature = signature;
+						publish(RouteChange.PLAYBACK_CHANGED, null, null);
+					}
+				}
+			};
+
+			mAudioManager.registerAudioPlaybackCallback(callback, mHandler);
+			mPlaybackCallback = callback;
+		}
+	}
+
+	public static void setup(Application app) {
+		if (mInstance != null)
+			return;
+
+		mInstance = new AudioRouteTracker(app);
+	}
+
+	/**
+	 * @return null before API 23
+	 */
+	public static AudioRouteTracker getInstance() {
+		Startup.require(Startup.ROUTE_TRACKER);
+		return mInstance;
+	}
+
+	/**
+	 * Latest outputs and routes. Never performs IPC.
+	 */
+	public Snapshot get() {
+		return mSnapshot;
+	}
+
+	/**
+	 * Device added / removed, route and playback changes, emitted on the tracker's thread
+	 */
+	public Observable<RouteChange> changes() {
+		return mChanges;
+	}
+
+	/**
+	 * Follows the device {@code routing} (e.g. an AudioTrack) is routed to under {@code name},
+	 * replacing any player tracked under that name.
+	 */
+	@RequiresApi(Build.VERSION_CODES.N)
+	public void track(String name, AudioRouting routing) {
+		mHandler.post(() -> {
+			removeRouteListener(name);
+
+			AudioRouting.OnRoutingChangedListener listener = router -> onRouted(name, router.getRoutedDevice());
+			routing.addOnRoutingChangedListener(listener, mHandler);
+			mRouteListeners.put(name, listener);
+			mRoutings.put(name, routing);
+
+			onRouted(name, routing.getRoutedDevice());
+		});
+	}
+
+	@RequiresApi(Build.VERSION_CODES.N)
+	public void untrack(String name) {
+		mHandler.post(() -> {
+			removeRouteListener(name);
+
+			Map<String, AudioDeviceInfo> routes = new HashMap<>(mSnapshot.mRoutes);
+			routes.remove(name);
+			mSnapshot = mSnapshot.withRoutes(routes);
+		});
+	}
+
+	public void cleanup() {
+		mAudioManager.unregisterAudioDeviceCallback(mDeviceCallback);
+		if (Utils.isAtLeastO() && mPlaybackCallback != null)
+			mAudioManager.unregisterAudioPlaybackCallback((AudioManager.AudioPlaybackCallback) mPlaybackCallback);
+
+		mChanges.onComplete();
+		mHandlerThread.quitSafely();
+	}
+
+	@RequiresApi(Build.VERSION_CODES.N)
+	private void removeRouteListener(String name) {
+		AudioRouting routing = mRoutings.remove(name);
+		AudioRouting.OnRoutingChangedListener listener = mRouteListeners.remove(name);
+		if (routing != null && listener != null)
+			routing.removeOnRoutingChangedListener(listener);
+	}
+
+	private void onRouted(String name, AudioDeviceInfo device) {
+		AudioDeviceInfo previous = mSnapshot.mRoutes.get(name);
+		if (previous == null ? device == null : device != null && previous.getId() == device.getId())
+			return;
+
+		Map<String, AudioDeviceInfo> routes = new HashMap<>(mSnapshot.mRoutes);
+		routes.put(name, device);
+		mSnapshot = mSnapshot.withRoutes(routes);
+		publish(RouteChange.ROUTE_CHANGED, name, device);
+	}
+
+	private void publish(int type, String routeName, AudioDeviceInfo device) {
+		RouteChange change = new RouteChange(type, SystemClock.elapsedRealtimeNanos(), routeName, device,
+				mSnapshot.mPlaybacks.size());
+		// Playback changes follow every play and stop; only device and route changes are notable
+		if (type == RouteChange.PLAYBACK_CHANGED)
+			Timber.d("Audio route change: %s", change);
+		else
+			Timber.i("Audio route change: %s", change);
+		mChanges.onNext(change);
+	}
+
+	/**
+	 * Sorted usage, content type and, on API 30 and newer, device of each playback, so callbacks
+	 * that only change player state compare equal.
+	 */
+	@RequiresApi(Build.VERSION_CODES.O)
+	private static long[] playbackSignature(List<AudioPlaybackConfiguration> configs) {
+		long[] signature = new long[configs.size()];
+		for (int i = 0; i < signature.length; i++) {
+			AudioPlaybackConfiguration config = configs.get(i);
+			AudioDeviceInfo device = Utils.isAtLeastR() ? config.getAudioDeviceInfo() : null;
+			signature[i] = (long) (device != null ? device.getId() : 0) << 32
+					| config.getAudioAttributes().getUsage() << 16
+					| config.getAudioAttributes().getContentType();
+		}
+
+		Arrays.sort(signature);
+		return signature;
+	}
+
+	/**
+	 * Immutable copy of the tracked outputs at one point in time.
+	 */
+	public static final class Snapshot {
+		private final Map<Integer, AudioDeviceInfo> mOutputs;
+		private final Map<String, AudioDeviceInfo> mRoutes;
+		private final List<AudioPlaybackConfiguration> mPlaybacks;
+
+		private Snapshot(Map<Integer, AudioDeviceInfo> outputs, Map<String, AudioDeviceInfo> routes,
+						 List<AudioPlaybackConfiguration> playbacks) {
+			mOutputs = outputs;
+			mRoutes = routes;
+			mPlaybacks = playbacks;
+		}
+
+		public Collection<AudioDeviceInfo> getOutputDevices() {
+			return Collections.unmodifiableCollection(mOutputs.values());
+		}
+
+		/**
+		 * Device the player tracked under {@code name} is routed to, or null if unknown
+		 */
+		public AudioDeviceInfo getRoutedDevice(String name) {
+			return mRoutes.get(name);
+		}
+
+		/**
+		 * Active playback configurations; always empty before API 26
+		 */
+		public List<AudioPlaybackConfiguration> getActivePlaybacks() {
+			return mPlaybacks;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format(Locale.US, "%d outputs, %d active playbacks", mOutputs.size(), mPlaybacks.size()));
+			for (AudioDeviceInfo device : mOutputs.values())
+				sb.append(String.format(Locale.US, "\n\toutput %d: type %d, \"%s\"", device.getId(), device.getType(), device.getProductName()));
+			for (Map.Entry<String, AudioDeviceInfo> route : mRoutes.entrySet())
+				sb.append(String.format(Locale.US, "\n\troute %s -> %s", route.getKey(),
+						route.getValue() != null ? route.getValue().getId() : "none"));
+
+			return sb.toString();
+		}
+
+		private Snapshot withOutputs(Map<Integer, AudioDeviceInfo> outputs) {
+			return new Snapshot(outputs, mRoutes, mPlaybacks);
+		}
+
+		private Snapshot withRoutes(Map<String, AudioDeviceInfo> routes) {
+			return new Snapshot(mOutputs, routes, mPlaybacks);
+		}
+
+		private Snapshot withPlaybacks(List<AudioPlaybackConfiguration> playbacks) {
+			return new Snapshot(mOutputs, mRoutes, playbacks);
+		}
+	}
+
+	/**
+	 * One timestamped change to the outputs.
+	 */
+	public static final class RouteChange {
+		public static final int DEVICE_ADDED = 0;
+		public static final int DEVICE_REMOVED = 1;
+		public static final int ROUTE_CHANGED = 2;
+		public static final int PLAYBACK_CHANGED = 3;
+		private static final String[] TYPE_NAMES = {"device added", "device removed", "route changed", "playback changed"};
+
+		private final int mType;
+		private final long mElapsedRealtimeNanos;
+		private final String mRouteName;
+		private final AudioDeviceInfo mDevice;
+		private final int mActivePlaybacks;
+
+		RouteChange(int type, long elapsedRealtimeNanos, String routeName, AudioDeviceInfo device, int activePlaybacks) {
+			mType = type;
+			mElapsedRealtimeNanos = elapsedRealtimeNanos;
+			mRouteName = routeName;
+			mDevice = device;
+			mActivePlaybacks = activePlaybacks;
+		}
+
+		public int getType() {
+			return mType;
+		}
+
+		/**
+		 * {@link SystemClock#elapsedRealtimeNanos()} of the change
+		 */
+		public long getElapsedRealtimeNanos() {
+			return mElapsedRealtimeNanos;
+		}
+
+		/**
+		 * Tracked player name for {@link #ROUTE_CHANGED}, otherwise null
+		 */
+		public String getRouteName() {
+			return mRouteName;
+		}
+
+		/**
+		 * Device added, removed or routed to; null for {@link #PLAYBACK_CHANGED} or if unrouted
+		 */
+		public AudioDeviceInfo getDevice() {
+			return mDevice;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format(Locale.US, "@%d ms %s", mElapsedRealtimeNanos / 1000000, TYPE_NAMES[mType]));
+			if (mRouteName != null)
+				sb.append(' ').append(mRouteName).append(" ->");
+			if (mDevice != null)
+				sb.append(String.format(Locale.US, " device %d (type %d, \"%s\")", mDevice.getId(), mDevice.getType(), mDevice.getProductName()));
+			if (mType == PLAYBACK_CHANGED)
+				sb.append(String.format(Locale.US, " %d active", mActivePlaybacks));
+
+			return sb.toString();
+		}
+	}
+}
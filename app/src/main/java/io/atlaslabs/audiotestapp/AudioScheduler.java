@@ -0,0 +1,168 @@
+package io.atlaslabs.audiotestapp;
+
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.atlaslabs.audiotestapp.core.LatencyHistogram;
+import io.reactivex.Scheduler;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Rx {@link Scheduler} for audio work: one looper thread at {@link Process#THREAD_PRIORITY_URGENT_AUDIO}.
+ * Player work subscribed on it doesn't queue behind I/O in {@code Schedulers.io()} or make that
+ * pool create threads under bursts, and since players created here deliver their callbacks to
+ * this thread's looper, MediaPlayer and Ringtone are only ever touched from one thread.
+ * <p>
+ * Keep tasks short and non-blocking; everything audio waits behind them. Queue depth (tasks
+ * scheduled but not yet started, including delayed ones), queue latency (from when a task was due
+ * until it started) and run time are recorded for {@link #dump()}.
+ */
+public final class AudioScheduler extends Scheduler {
+	private static AudioScheduler mInstance = null;
+	private final HandlerThread mThread;
+	private final Scheduler mLooperScheduler;
+
+	private final AtomicInteger mQueueDepth = new AtomicInteger();
+	private final AtomicInteger mMaxQueueDepth = new AtomicInteger();
+	private final LatencyHistogram mQueueLatency = new LatencyHistogram("audio task queue latency");
+	private final LatencyHistogram mRunTime = new LatencyHistogram("audio task run time");
+
+	private AudioScheduler() {
+		mThread = new HandlerThread("Audio", Process.THREAD_PRIORITY_URGENT_AUDIO);
+		mThread.start();
+		mLooperScheduler = AndroidSchedulers.from(mThread.getLooper());
+	}
+
+	public static void setup() {
+		if (mInstance != null)
+			return;
+
+		mInstance = new AudioScheduler();
+	}
+
+	public static AudioScheduler getInstance() {
+		Startup.require(Startup.AUDIO_SCHEDULER);
+		return mInstance;
+	}
+
+	public Looper getLooper() {
+		return mThread.getLooper();
+	}
+
+	public boolean isCurrentThread() {
+		return Looper.myLooper() == mThread.getLooper();
+	}
+
+	@Override
+	public Worker createWorker() {
+		return new MeteredWorker(mLooperScheduler.createWorker());
+	}
+
+	/**
+	 * Runs tasks already due, then stops the thread. Later tasks are dropped.
+	 */
+	@Override
+	public void shutdown() {
+		mThread.quitSafely();
+	}
+
+	public String dump() {
+		return String.format(Locale.US, "queue depth %d (max %d)\n%s\n%s", mQueueDepth.get(), mMaxQueueDepth.get(),
+				mQueueLatency.summary(), mRunTime.summary());
+	}
+
+	private final class MeteredWorker extends Worker {
+		private final Worker mWorker;
+		private final CompositeDisposable mTasks = new CompositeDisposable();
+
+		MeteredWorker(Worker worker) {
+			mWorker = worker;
+		}
+
+		@Override
+		public Disposable schedule(Runnable run, long delay, TimeUnit unit) {
+			Task task = new Task(run, System.nanoTime() + unit.toNanos(Math.max(0, delay)), mTasks);
+			mTasks.add(task);
+			task.mScheduled = mWorker.schedule(task, delay, unit);
+			// Disposed while being scheduled
+			if (task.mCancelled)
+				task.mScheduled.dispose();
+			return task;
+		}
+
+		@Override
+		public void dispose() {
+			// Disposes the tasks still queued, which takes them out of the queue depth
+			mTasks.dispose();
+			mWorker.dispose();
+		}
+
+		@Override
+		public boolean isDisposed() {
+			return mWorker.isDisposed();
+		}
+	}
+
+	private final class Task implements Runnable, Disposable {
+		private final Runnable mRun;
+		private final long mDueNanos;
+		private final CompositeDisposable mParent;
+		private final AtomicBoolean mDequeued = new AtomicBoolean();
+		private volatile Disposable mScheduled;
+		private volatile boolean mCancelled = false;
+
+		Task(Runnable run, long dueNanos, CompositeDisposable parent) {
+			mRun = run;
+			mDueNanos = dueNanos;
+			mParent = parent;
+
+			int depth = mQueueDepth.incrementAndGet();
+			int max;
+			while (depth > (max = mMaxQueueDepth.get()) && !mMaxQueueDepth.compareAndSet(max, depth)) {
+				// Retry until this depth is recorded or a larger one wins
+			}
+		}
+
+		@Override
+		public void run() {
+			long startNanos = System.nanoTime();
+			dequeue();
+			mQueueLatency.record(startNanos - mDueNanos);
+
+			try {
+				mRun.run();
+			} finally {
+				mRunTime.record(System.nanoTime() - startNanos);
+				mParent.delete(this);
+			}
+		}
+
+		@Override
+		public void dispose() {
+			mCancelled = true;
+			dequeue();
+			Disposable scheduled = mScheduled;
+			if (scheduled != null)
+				scheduled.dispose();
+			mParent.delete(this);
+		}
+
+		@Override
+		public boolean isDisposed() {
+			return mCancelled;
+		}
+
+		private void dequeue() {
+			if (mDequeued.compareAndSet(false, true))
+				mQueueDepth.decrementAndGet();
+		}
+	}
+}
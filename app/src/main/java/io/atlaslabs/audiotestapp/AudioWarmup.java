@@ -0,0 +1,135 @@
+package io.atlaslabs.audiotestapp;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.Process;
+
+import androidx.annotation.RequiresApi;
+
+import io.atlaslabs.audiotestapp.core.IAlertPlayer;
+import io.atlaslabs.audiotestapp.util.Utils;
+import io.reactivex.Completable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import timber.log.Timber;
+
+/**
+ * Moves the one-time cost of the first alert to application start: prepares the alert player,
+ * resolves the alert sound sources, and opens the alarm output path by playing a short buffer of
+ * silence, which brings up the audio HAL stream. Runs at background priority on an io thread, so it
+ * does not compete with the first frame, and stops between steps once disposed.
+ */
+public final class AudioWarmup {
+	private static final int SILENCE_MS = 50;
+
+	private AudioWarmup() {
+	}
+
+	/**
+	 * Starts warm-up in the background.
+	 *
+	 * @return dispose to cancel warm-up
+	 */
+	public static Disposable start(Context context, IAlertPlayer player) {
+		Context appContext = context.getApplicationContext();
+
+		return Completable.create(emitter -> {
+			int priority = Process.getThreadPriority(Process.myTid());
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+			try {
+				long startNanos = System.nanoTime();
+				player.prepare();
+				long playerNanos = System.nanoTime();
+				if (emitter.isDisposed())
+					return;
+
+				// Returned to the cache idle, with its local player prepared, for the first alert to lease
+				RingtoneCache.Lease lease = RingtoneCache.getInstance().acquire(PcmAlertCache.getResourceUri(appContext, R.raw.woopwoop),
+						AudioAttributes.USAGE_ALARM, AudioAttributes.CONTENT_TYPE_SONIFICATION);
+				if (lease != null)
+					lease.release();
+				if (PcmAlertCache.getInstance() != null)
+					PcmAlertCache.getInstance().preload();
+				if (Utils.isAtLeastL()) {
+					MediaPlayerPool.getInstance().prepare(PcmAlertCache.getResourceUri(appContext, R.raw.chime),
+							UserNotificationManager.MEDIA_USAGE, UserNotificationManager.MEDIA_CONTENT_TYPE).blockingAwait();
+				}
+				long sourcesNanos = System.nanoTime();
+				if (emitter.isDisposed())
+					return;
+
+				if (Utils.isAtLeastL())
+					openAlarmOutput();
+				long outputNanos = System.nanoTime();
+
+				Timber.i("Audio warm-up took %d ms (player %d ms, sources %d ms, output %d ms)",
+						(outputNanos - startNanos) / 1000000, (playerNanos - startNanos) / 1000000,
+						(sourcesNanos - playerNanos) / 1000000, (outputNanos - sourcesNanos) / 1000000);
+				emitter.onComplete();
+			} catch (InterruptedException e) {
+				Timber.d("Audio warm-up cancelled");
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				// blockingAwait() rethrows an interrupt wrapped in a RuntimeException
+				if (e.getCause() instanceof InterruptedException) {
+					Timber.d("Audio warm-up cancelled");
+					Thread.currentThread().interrupt();
+				} else {
+					emitter.tryOnError(e);
+				}
+			} catch (Exception e) {
+				emitter.tryOnError(e);
+			} finally {
+				Process.setThreadPriority(priority);
+			}
+		})
+				.subscribeOn(Schedulers.io())
+				.subscribe(() -> { },
+						throwable -> Timber.e(throwable, "Error warming up audio: %s", throwable.getLocalizedMessage()));
+	}
+
+	/**
+	 * Plays a short buffer of silence through an alarm-usage track at the native output rate.
+	 */
+	@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+	private static void openAlarmOutput() throws InterruptedException {
+		int sampleRate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_ALARM);
+		// 16-bit mono, zero-filled
+		byte[] silence = new byte[sampleRate * SILENCE_MS / 1000 * 2];
+
+		AudioAttributes attributes = new AudioAttributes.Builder()
+				.setUsage(AudioAttributes.USAGE_ALARM)
+				.setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+				.build();
+
+		AudioFormat format = new AudioFormat.Builder()
+				.setSampleRate(sampleRate)
+				.setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+				.setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+				.build();
+
+		AudioTrack track = new AudioTrack(attributes, format, silence.length, AudioTrack.MODE_STATIC,
+				AudioManager.AUDIO_SESSION_ID_GENERATE);
+
+		try {
+			track.write(silence, 0, silence.length);
+			if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+				Timber.w("Unable to open alarm output for warm-up (state %d)", track.getState());
+				return;
+			}
+
+			track.play();
+			// Long enough for the output stream to open and the silence to drain
+			Thread.sleep(SILENCE_MS * 2);
+		} finally {
+			if (track.getState() == AudioTrack.STATE_INITIALIZED && track.getPlayState() != AudioTrack.PLAYSTATE_STOPPED)
+				track.stop();
+			track.release();
+		}
+	}
+}
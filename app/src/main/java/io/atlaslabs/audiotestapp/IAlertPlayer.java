@@ -1,6 +0,0 @@
-package io.atlaslabs.audiotestapp;
-
-public interface IAlertPlayer {
-	void startSound(SoundSettings soundSettings);
-	void stopSound();
-}
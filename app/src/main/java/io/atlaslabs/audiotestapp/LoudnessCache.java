@@ -0,0 +1,155 @@
+package io.atlaslabs.audiotestapp;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.atlaslabs.audiotestapp.core.LoudnessAnalyzer;
+import timber.log.Timber;
+
+/**
+ * Normalization gain per sound Uri, so a given volume sounds about equally loud for every sound.
+ * The gain brings the sound's measured loudness to the LOUDNESS_TARGET_LUFS resource, limited so
+ * its peak stays below {@link #PEAK_CEILING_DBFS}.
+ * <p>
+ * Sounds are analyzed once, streaming the decoder output through a {@link LoudnessAnalyzer}, so
+ * long files are never held in memory. Gains are kept in memory and in shared preferences, which
+ * are cleared when the app version changes because bundled sounds may have changed with it.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public final class LoudnessCache {
+	private static final String PREFS_NAME = "loudness_gains";
+	private static final String KEY_VERSION = "version";
+	private static final double PEAK_CEILING_DBFS = -1.0;
+	private static final double MAX_GAIN_DB = 12.0;
+
+	private static LoudnessCache mInstance = null;
+	private final Context mContext;
+	private final SharedPreferences mPrefs;
+	private final double mTargetLufs;
+	private final Map<String, Float> mGains = new ConcurrentHashMap<>();
+
+	private LoudnessCache(Application app) {
+		mContext = app;
+		mTargetLufs = Double.parseDouble(app.getString(R.string.LOUDNESS_TARGET_LUFS));
+		mPrefs = app.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+
+		if (mPrefs.getInt(KEY_VERSION, -1) != BuildConfig.VERSION_CODE)
+			mPrefs.edit().clear().putInt(KEY_VERSION, BuildConfig.VERSION_CODE).apply();
+	}
+
+	public static void setup(Application app) {
+		if (mInstance != null)
+			return;
+
+		mInstance = new LoudnessCache(app);
+	}
+
+	public static LoudnessCache getInstance() {
+		Startup.require(Startup.LOUDNESS_CACHE);
+		return mInstance;
+	}
+
+	/**
+	 * Returns the gain for {@code uri}, decoding and analyzing it on first use. Blocks on a miss,
+	 * so call off the main thread.
+	 *
+	 * @return 1 if the sound could not be analyzed
+	 */
+	public float getGain(Uri uri) {
+		Float gain = getCachedGain(uri.toString());
+		if (gain != null)
+			return gain;
+
+		AnalyzerSink sink = new AnalyzerSink();
+		try {
+			long startNanos = System.nanoTime();
+			PcmDecoder.decode(mContext, uri, sink);
+			return putGain(uri, sink.getResult(), startNanos);
+		} catch (Exception e) {
+			Timber.e(e, "Error analyzing loudness of %s: %s", uri, e.getLocalizedMessage());
+			return 1.0f;
+		}
+	}
+
+	/**
+	 * Returns the gain for an already decoded clip, analyzing it on first use.
+	 */
+	public float getGain(PcmClip clip) {
+		Float gain = getCachedGain(clip.getSourceUri().toString());
+		if (gain != null)
+			return gain;
+
+		long startNanos = System.nanoTime();
+		LoudnessAnalyzer analyzer = new LoudnessAnalyzer(clip.getSampleRate(), clip.getChannelCount());
+		analyzer.process(clip.getData().asShortBuffer());
+		return putGain(clip.getSourceUri(), analyzer.getResult(), startNanos);
+	}
+
+	public String dump() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.US, "%d sounds, target %.1f LUFS", mGains.size(), mTargetLufs));
+		for (Map.Entry<String, Float> entry : mGains.entrySet())
+			sb.append(String.format(Locale.US, "\n\t%s: %.1f dB", entry.getKey(), 20 * Math.log10(entry.getValue())));
+
+		return sb.toString();
+	}
+
+	private Float getCachedGain(String key) {
+		Float gain = mGains.get(key);
+		if (gain != null)
+			return gain;
+
+		if (!mPrefs.contains(key))
+			return null;
+
+		gain = mPrefs.getFloat(key, 1.0f);
+		mGains.put(key, gain);
+		return gain;
+	}
+
+	private float putGain(Uri uri, LoudnessAnalyzer.Result result, long startNanos) {
+		float gain = result.getNormalizationGain(mTargetLufs, PEAK_CEILING_DBFS, MAX_GAIN_DB);
+		mGains.put(uri.toString(), gain);
+		mPrefs.edit().putFloat(uri.toString(), gain).apply();
+
+		Timber.d("Loudness of %s: %s; gain %.1f dB (analyzed in %d ms)", uri, result, 20 * Math.log10(gain),
+				(System.nanoTime() - startNanos) / 1000000);
+		return gain;
+	}
+
+	private static final class AnalyzerSink implements PcmDecoder.Sink {
+		private LoudnessAnalyzer mAnalyzer = null;
+		private int mSampleRate;
+		private int mChannelCount;
+
+		@Override
+		public void onFormat(int sampleRate, int channelCount) {
+			// The codec reports its output format before the first samples, so restarting loses nothing
+			if (mAnalyzer != null && sampleRate == mSampleRate && channelCount == mChannelCount)
+				return;
+
+			mSampleRate = sampleRate;
+			mChannelCount = channelCount;
+			mAnalyzer = new LoudnessAnalyzer(sampleRate, channelCount);
+		}
+
+		@Override
+		public void onPcm(ByteBuffer pcm) {
+			mAnalyzer.process(pcm.asShortBuffer());
+		}
+
+		LoudnessAnalyzer.Result getResult() {
+			return mAnalyzer.getResult();
+		}
+	}
+}
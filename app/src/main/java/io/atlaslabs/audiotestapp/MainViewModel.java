@@ -8,34 +8,48 @@ import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 import androidx.lifecycle.AndroidViewModel;
 
+import io.atlaslabs.audiotestapp.core.SoundSettings;
 import io.atlaslabs.audiotestapp.util.Utils;
+import io.reactivex.Completable;
 import io.reactivex.Observable;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import timber.log.Timber;
 
 public class MainViewModel extends AndroidViewModel {
 	private final Application mApp;
 	private final SoundSettings mSoundSettings;
+	// Alert calls wait here, in call order, until the alert player is initialized in the background
+	private final Completable mAlertPlayerReady;
 
 	public MainViewModel(@NonNull Application app) {
 		super(app);
 
 		mApp = app;
-		mSoundSettings = new SoundSettings(app, 1.0f, true, 10);
+		mSoundSettings = App.CreateSoundSettings(1.0f, true, 10);
+		mAlertPlayerReady = Startup.whenInitialized(Startup.ALERT_PLAYER)
+				.observeOn(AndroidSchedulers.mainThread())
+				.cache();
 	}
 
 	public void playSoundTest() {
 		SoundTest.getInstance().play();
 	}
 
-	public void stopSoundTest() {
-		SoundTest.getInstance().stop();
+	/**
+	 * Returns immediately; the returned Completable signals when the playback thread has exited
+	 */
+	public Completable stopSoundTest() {
+		return SoundTest.getInstance().stop();
 	}
 
 	public void startAlert() {
-		App.GetAlertPlayer().startSound(mSoundSettings);
+		mAlertPlayerReady.subscribe(() -> App.GetAlertPlayer().startSound(mSoundSettings),
+				throwable -> Timber.e(throwable, "Error starting alert: %s", throwable.getLocalizedMessage()));
 	}
 
 	public void stopAlert() {
-		App.GetAlertPlayer().stopSound();
+		mAlertPlayerReady.subscribe(() -> App.GetAlertPlayer().stopSound(),
+				throwable -> Timber.e(throwable, "Error stopping alert: %s", throwable.getLocalizedMessage()));
 	}
 
 	public void startService() {
@@ -0,0 +1,403 @@
+package io.atlaslabs.audiotestapp;
+
+import android.app.Application;
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.Single;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+import timber.log.Timber;
+
+/**
+ * Bounded pool of prepared {@link MediaPlayer} instances, keyed by sound Uri and audio usage /
+ * content type. Creating and preparing a player costs a data source open and a synchronous
+ * prepare, so a play that finds an idle player for its key only starts it; players return to the
+ * pool on completion, rewound with seekTo(0), instead of being released.
+ * <p>
+ * MediaPlayer is not thread safe, so every player is created, used and released on the
+ * {@link AudioScheduler} thread, which also receives their callbacks. Only opening the data source
+ * and the synchronous prepare, which block, run on {@code Schedulers.io()}; the player is handed
+ * back to the audio thread afterwards. Players evicted from the pool or that
+ * failed are reset and kept as spares for the next miss, which keeps their audio session; audio
+ * sessions of released players are reused too.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public final class MediaPlayerPool implements MediaPlayer.OnCompletionListener, MediaPlayer.OnErrorListener {
+	private static final int MAX_IDLE_PLAYERS = 4;
+	private static final int MAX_SPARE_PLAYERS = 2;
+
+	private static MediaPlayerPool mInstance = null;
+	private final Context mContext;
+	private final AudioManager mAudioManager;
+	private final AudioScheduler mScheduler;
+
+	// Only modified on the audio thread, under the lock so dump() can read them. Idle players are in
+	// check-in order, so least recently used first
+	private final LinkedHashMap<MediaPlayer, Key> mIdle = new LinkedHashMap<>();
+	private final Map<MediaPlayer, Key> mBusy = new HashMap<>();
+	private final ArrayDeque<MediaPlayer> mSpares = new ArrayDeque<>();
+	private final ArrayDeque<Integer> mFreeSessions = new ArrayDeque<>();
+	// Callers of playToCompletion() waiting for their player to finish
+	private final Map<MediaPlayer, CompletableEmitter> mWaiting = new HashMap<>();
+	// Set by release(); players that finish preparing afterwards are released instead of handed out
+	private boolean mReleased = false;
+
+	private long mHits = 0;
+	private long mMisses = 0;
+	private long mEvictions = 0;
+	private long mErrors = 0;
+
+	private MediaPlayerPool(Application app) {
+		mContext = app;
+		mAudioManager = (AudioManager) app.getSystemService(Context.AUDIO_SERVICE);
+		mScheduler = AudioScheduler.getInstance();
+	}
+
+	public static void setup(Application app) {
+		if (mInstance != null)
+			return;
+
+		mInstance = new MediaPlayerPool(app);
+	}
+
+	public static MediaPlayerPool getInstance() {
+		Startup.require(Startup.MEDIA_PLAYER_POOL);
+		return mInstance;
+	}
+
+	/**
+	 * Starts {@code uri} with the given AudioAttributes usage and content type, on a pooled player
+	 * if one is idle and on a newly prepared one otherwise.
+	 *
+	 * @return emits the audio session the sound plays in once it has started
+	 */
+	public Single<Integer> play(Uri uri, int usage, int contentType) {
+		return Single.<Integer>create(emitter -> checkout(new Key(uri, usage, contentType), player -> {
+			player.start();
+			emitter.onSuccess(player.getAudioSessionId());
+		}, emitter::tryOnError)).subscribeOn(mScheduler);
+	}
+
+	/**
+	 * Like {@link #play}, but completes only when playback has finished, so a caller can limit how
+	 * many players are busy at once. Disposing stops playback and returns the player to the pool.
+	 */
+	public Completable playToCompletion(Uri uri, int usage, int contentType) {
+		Key key = new Key(uri, usage, contentType);
+		return Completable.create(emitter -> checkout(key, player -> {
+			if (emitter.isDisposed()) {
+				// Gone while the player was being prepared
+				synchronized (this) {
+					mBusy.remove(player);
+				}
+				checkin(player, key);
+				return;
+			}
+
+			synchronized (this) {
+				mWaiting.put(player, emitter);
+			}
+
+			emitter.setCancellable(() -> mScheduler.scheduleDirect(() -> stopEarly(player, emitter)));
+			player.start();
+		}, emitter::tryOnError)).subscribeOn(mScheduler);
+	}
+
+	/**
+	 * Prepares a player for {@code uri} in advance unless one is already idle, so the first play is a checkout too.
+	 */
+	public Completable prepare(Uri uri, int usage, int contentType) {
+		Key key = new Key(uri, usage, contentType);
+		return Completable.create(emitter -> {
+			synchronized (this) {
+				if (mIdle.containsValue(key)) {
+					emitter.onComplete();
+					return;
+				}
+			}
+
+			create(key, player -> {
+				synchronized (this) {
+					mBusy.remove(player);
+				}
+				checkin(player, key);
+				emitter.onComplete();
+			}, emitter::tryOnError);
+		}).subscribeOn(mScheduler);
+	}
+
+	/**
+	 * Releases every player. The pool can't be used afterwards.
+	 */
+	public void release() {
+		mScheduler.scheduleDirect(() -> {
+			List<CompletableEmitter> waiting;
+			synchronized (this) {
+				mReleased = true;
+				for (MediaPlayer player : mIdle.keySet())
+					player.release();
+				for (MediaPlayer player : mBusy.keySet())
+					player.release();
+				for (MediaPlayer player : mSpares)
+					player.release();
+
+				waiting = new ArrayList<>(mWaiting.values());
+				mIdle.clear();
+				mBusy.clear();
+				mSpares.clear();
+				mWaiting.clear();
+			}
+
+			for (CompletableEmitter emitter : waiting)
+				emitter.onComplete();
+		});
+	}
+
+	public synchronized String dump() {
+		long checkouts = mHits + mMisses;
+		return String.format(Locale.US, "%d/%d idle, %d playing, %d spare, hits=%d, misses=%d, evictions=%d, errors=%d, hit rate=%.1f%%",
+				mIdle.size(), MAX_IDLE_PLAYERS, mBusy.size(), mSpares.size(), mHits, mMisses, mEvictions, mErrors,
+				checkouts > 0 ? 100.0 * mHits / checkouts : 0.0);
+	}
+
+	@Override
+	public void onCompletion(MediaPlayer player) {
+		Key key;
+		CompletableEmitter waiting;
+		synchronized (this) {
+			key = mBusy.remove(player);
+			waiting = mWaiting.remove(player);
+		}
+
+		if (key != null)
+			checkin(player, key);
+		if (waiting != null)
+			waiting.onComplete();
+	}
+
+	@Override
+	public boolean onError(MediaPlayer player, int what, int extra) {
+		Timber.e("Pooled media player error: what=%d, extra=%d", what, extra);
+		CompletableEmitter waiting;
+		synchronized (this) {
+			mErrors++;
+			Key key = mBusy.remove(player);
+			if (key == null)
+				mIdle.remove(player);
+			waiting = mWaiting.remove(player);
+		}
+
+		// Handled, so no completion follows; the player is reusable once reset
+		retire(player);
+		if (waiting != null)
+			waiting.tryOnError(new IOException("Media player error: what=" + what + ", extra=" + extra));
+		return true;
+	}
+
+	/**
+	 * Pauses a player whose playToCompletion() caller went away, unless it already finished.
+	 */
+	private synchronized void stopEarly(MediaPlayer player, CompletableEmitter emitter) {
+		if (mWaiting.get(player) != emitter)
+			return;
+
+		mWaiting.remove(player);
+		Key key = mBusy.remove(player);
+		player.pause();
+		if (key != null)
+			checkin(player, key);
+	}
+
+	private synchronized boolean isReleased() {
+		return mReleased;
+	}
+
+	/**
+	 * Hands {@code ready} a busy player for {@code key} on the audio thread: an idle one at once, or a
+	 * new one once prepared. Call on the audio thread.
+	 */
+	private void checkout(Key key, Consumer<MediaPlayer> ready, Consumer<Throwable> failed) throws Exception {
+		if (isReleased()) {
+			failed.accept(new IllegalStateException("Media player pool released"));
+			return;
+		}
+
+		MediaPlayer idle = null;
+		synchronized (this) {
+			Iterator<Map.Entry<MediaPlayer, Key>> entries = mIdle.entrySet().iterator();
+			while (entries.hasNext()) {
+				Map.Entry<MediaPlayer, Key> entry = entries.next();
+				if (entry.getValue().equals(key)) {
+					entries.remove();
+					idle = entry.getKey();
+					mBusy.put(idle, key);
+					break;
+				}
+			}
+
+			if (idle != null)
+				mHits++;
+			else
+				mMisses++;
+		}
+
+		if (idle != null)
+			ready.accept(idle);
+		else
+			create(key, ready, failed);
+	}
+	/**
+	 * Rewinds a finished player and returns it to the idle set, evicting the least recently used idle player if full.
+	 */
+	private synchronized void checkin(MediaPlayer player, Key key) {
+		if (mReleased) {
+			player.release();
+			return;
+		}
+
+		player.seekTo(0);
+		mIdle.put(player, key);
+
+		if (mIdle.size() > MAX_IDLE_PLAYERS) {
+			Iterator<Map.Entry<MediaPlayer, Key>> eldest = mIdle.entrySet().iterator();
+			Map.Entry<MediaPlayer, Key> evicted = eldest.next();
+			eldest.remove();
+			mEvictions++;
+			Timber.v("Evicting media player for %s", evicted.getValue().mUri);
+			retire(evicted.getKey());
+		}
+	}
+
+	/**
+	 * Creates a player for {@code key} on the audio thread, so its callbacks arrive there, prepares
+	 * it on the I/O scheduler and hands it to {@code ready} back on the audio thread, busy. Call on the
+	 * audio thread.
+	 */
+	private void create(Key key, Consumer<MediaPlayer> ready, Consumer<Throwable> failed) {
+		long startNanos = System.nanoTime();
+		MediaPlayer player = obtain();
+
+		Schedulers.io().scheduleDirect(() -> {
+			Exception error = null;
+			try {
+				player.setAudioAttributes(new AudioAttributes.Builder()
+						.setUsage(key.mUsage)
+						.setContentType(key.mContentType)
+						.build());
+				player.setDataSource(mContext, key.mUri);
+				player.prepare();
+			} catch (IOException | RuntimeException e) {
+				error = e;
+			}
+
+			Exception prepareError = error;
+			mScheduler.scheduleDirect(() -> {
+				try {
+					if (isReleased()) {
+						// Prepared after release(), which could not see this player
+						player.release();
+						failed.accept(new IllegalStateException("Media player pool released"));
+						return;
+					}
+
+					if (prepareError != null) {
+						retire(player);
+						failed.accept(prepareError);
+						return;
+					}
+
+					Timber.d("Prepared media player for %s in session %d in %d ms", key.mUri, player.getAudioSessionId(),
+							(System.nanoTime() - startNanos) / 1000000);
+					synchronized (this) {
+						mBusy.put(player, key);
+					}
+					ready.accept(player);
+				} catch (Exception e) {
+					Timber.e(e, "Error handing out media player for %s: %s", key.mUri, e.getLocalizedMessage());
+				}
+			});
+		});
+	}
+
+	/**
+	 * A spare player, or a new one in a reused audio session if there is one.
+	 */
+	private synchronized MediaPlayer obtain() {
+		MediaPlayer player = mSpares.poll();
+		if (player == null) {
+			player = new MediaPlayer();
+			Integer sessionId = mFreeSessions.poll();
+			player.setAudioSessionId(sessionId != null ? sessionId : mAudioManager.generateAudioSessionId());
+		}
+
+		player.setOnCompletionListener(this);
+		player.setOnErrorListener(this);
+		return player;
+	}
+
+	/**
+	 * Resets a player that left the pool and keeps it as a spare, or releases it if there are enough spares.
+	 */
+	private synchronized void retire(MediaPlayer player) {
+		if (mReleased) {
+			player.release();
+			return;
+		}
+
+		if (mSpares.size() < MAX_SPARE_PLAYERS) {
+			player.reset();
+			mSpares.add(player);
+			return;
+		}
+
+		mFreeSessions.add(player.getAudioSessionId());
+		player.release();
+	}
+
+	private static final class Key {
+		private final Uri mUri;
+		private final int mUsage;
+		private final int mContentType;
+
+		Key(Uri uri, int usage, int contentType) {
+			mUri = uri;
+			mUsage = usage;
+			mContentType = contentType;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+
+			Key other = (Key) o;
+			return mUsage == other.mUsage && mContentType == other.mContentType && mUri.equals(other.mUri);
+		}
+
+		@Override
+		public int hashCode() {
+			return (mUri.hashCode() * 31 + mUsage) * 31 + mContentType;
+		}
+	}
+}
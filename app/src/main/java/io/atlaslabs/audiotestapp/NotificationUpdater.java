@@ -0,0 +1,154 @@
+package io.atlaslabs.audiotestapp;
+
+import android.app.Notification;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.util.ObjectsCompat;
+
+import java.util.Locale;
+
+/**
+ * Posts one notification from a single reusable builder. {@link #update} posts only when the
+ * title or text actually changed, and at most once per interval: updates arriving within the
+ * interval of the last post are coalesced and the latest one is posted when it ends. The platform
+ * drops notification updates an app posts too quickly, so frequent status updates stay cheap and
+ * none are lost to throttling. Thread safe.
+ */
+public final class NotificationUpdater {
+	private final NotificationManagerCompat mManager;
+	private final NotificationCompat.Builder mBuilder;
+	private final NotificationCompat.BigTextStyle mStyle = new NotificationCompat.BigTextStyle();
+	private final int mId;
+	private final long mIntervalMs;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final Runnable mPostPending = this::postPending;
+
+	// Guarded by this. The latest requested content, and the content last posted
+	private String mTitle = null;
+	private String mText = null;
+	private String mPostedTitle = null;
+	private String mPostedText = null;
+	private Notification mNotification = null;
+	private long mLastPostMillis = 0;
+	private boolean mPending = false;
+
+	private long mRequests = 0;
+	private long mPosts = 0;
+	private long mUnchanged = 0;
+	private long mCoalesced = 0;
+
+	/**
+	 * @param builder    reused for every post; its style is replaced by a big text style, and only its title and text change
+	 * @param intervalMs minimum time between posts made by {@link #update}
+	 */
+	public NotificationUpdater(NotificationManagerCompat manager, NotificationCompat.Builder builder, int id,
+			long intervalMs) {
+		mManager = manager;
+		// Set once; each post only changes its text
+		mBuilder = builder.setStyle(mStyle);
+		mId = id;
+		mIntervalMs = intervalMs;
+	}
+
+	/**
+	 * Requests that the notification show {@code title} and {@code text}. Returns without posting
+	 * when they are already shown, or when a post within the interval is pending, which will then
+	 * show them instead.
+	 */
+	public synchronized void update(String title, String text) {
+		mRequests++;
+		if (mPending) {
+			mCoalesced++;
+			mTitle = title;
+			mText = text;
+			return;
+		}
+
+		if (isPosted(title, text)) {
+			mUnchanged++;
+			return;
+		}
+
+		mTitle = title;
+		mText = text;
+		long waitMs = mLastPostMillis + mIntervalMs - SystemClock.uptimeMillis();
+		if (mPosts == 0 || waitMs <= 0) {
+			post();
+		} else {
+			mPending = true;
+			mHandler.postDelayed(mPostPending, waitMs);
+		}
+	}
+
+	/**
+	 * Posts {@code title} and {@code text} immediately, replacing any pending update, e.g. for a
+	 * notification that has to exist before a service goes foreground.
+	 *
+	 * @return the posted notification
+	 */
+	public synchronized Notification post(String title, String text) {
+		mRequests++;
+		if (mPending) {
+			mHandler.removeCallbacks(mPostPending);
+			mPending = false;
+		}
+
+		mTitle = title;
+		mText = text;
+		return post();
+	}
+
+	/**
+	 * The notification last posted, or null before the first post.
+	 */
+	public synchronized Notification getNotification() {
+		return mNotification;
+	}
+
+	/**
+	 * Drops a pending update.
+	 */
+	public synchronized void cancel() {
+		mHandler.removeCallbacks(mPostPending);
+		mPending = false;
+	}
+
+	public synchronized String dump() {
+		return String.format(Locale.US, "requests=%d, posts=%d, unchanged=%d, coalesced=%d, pending=%s, interval=%d ms",
+				mRequests, mPosts, mUnchanged, mCoalesced, mPending, mIntervalMs);
+	}
+
+	private synchronized void postPending() {
+		if (!mPending)
+			return;
+
+		mPending = false;
+		if (isPosted(mTitle, mText))
+			mUnchanged++;
+		else
+			post();
+	}
+
+	private Notification post() {
+		mStyle.bigText(mText);
+		mNotification = mBuilder
+				.setContentTitle(mTitle)
+				.setContentText(mText)
+				.build();
+		mManager.notify(mId, mNotification);
+
+		mPostedTitle = mTitle;
+		mPostedText = mText;
+		mLastPostMillis = SystemClock.uptimeMillis();
+		mPosts++;
+		return mNotification;
+	}
+
+	private boolean isPosted(String title, String text) {
+		return mNotification != null && ObjectsCompat.equals(title, mPostedTitle) && ObjectsCompat.equals(text, mPostedText);
+	}
+}
@@ -0,0 +1,155 @@
+package io.atlaslabs.audiotestapp;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.net.Uri;
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.atlaslabs.audiotestapp.core.ToneSpec;
+import io.atlaslabs.audiotestapp.core.ToneSynthesizer;
+import timber.log.Timber;
+
+/**
+ * Holds the alert sounds as PCM, so playback never pays for MP3 decoding, and tones
+ * synthesized from a {@link ToneSpec}. Synthesized tones need no asset or decoder and are rendered
+ * in mono at the output's native rate, so they are smaller than a decoded stereo asset.
+ * <p>
+ * Sounds are loaded through the {@link PcmDiskCache}, so they are decoded once per install rather
+ * than once per process.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public final class PcmAlertCache {
+	static final int[] ALERT_RESOURCE_IDS = {R.raw.woopwoop, R.raw.chime};
+	private static final int ALERT_RESOURCE_ID = R.raw.woopwoop;
+	private static final String TONE_SCHEME = "tone";
+
+	private static PcmAlertCache mInstance = null;
+	private final Context mContext;
+	// Keyed by source Uri
+	private final Map<String, PcmClip> mClips = new ConcurrentHashMap<>();
+	private final Map<String, PcmClip> mTones = new ConcurrentHashMap<>();
+	// Tone description the alert is synthesized from, or empty to play the alert asset
+	private final String mAlertTone;
+
+	private PcmAlertCache(Application app) {
+		mContext = app;
+		mAlertTone = app.getString(R.string.ALERT_TONE).trim();
+	}
+
+	public static void setup(Application app) {
+		if (mInstance != null)
+			return;
+
+		mInstance = new PcmAlertCache(app);
+	}
+
+	public static PcmAlertCache getInstance() {
+		return mInstance;
+	}
+
+	static Uri getResourceUri(Context context, int resId) {
+		return Uri.parse(ContentResolver.SCHEME_ANDROID_RESOURCE + "://" + context.getPackageName() + "/" + resId);
+	}
+
+	/**
+	 * Decodes every alert sound. Blocks, so call off the main thread.
+	 */
+	public void preload() {
+		for (int resId : ALERT_RESOURCE_IDS)
+			getClip(resId);
+		getAlertClip();
+	}
+
+	/**
+	 * The clip alert players play: the ALERT_TONE resource synthesized if set, otherwise the alert asset.
+	 *
+	 * @return null if the clip could not be decoded or the tone description is invalid
+	 */
+	public PcmClip getAlertClip() {
+		return mAlertTone.isEmpty() ? getClip(ALERT_RESOURCE_ID) : getTone(mAlertTone);
+	}
+
+	/**
+	 * Returns {@code spec} (a {@link ToneSpec} description or preset name) synthesized at the
+	 * alarm output's native rate, rendering it on first use.
+	 *
+	 * @return null if the description is invalid
+	 */
+	public PcmClip getTone(String spec) {
+		PcmClip clip = mTones.get(spec);
+		if (clip != null)
+			return clip;
+
+		synchronized (this) {
+			clip = mTones.get(spec);
+			if (clip != null)
+				return clip;
+
+			try {
+				long startNanos = System.nanoTime();
+				ToneSpec tone = ToneSpec.parse(spec);
+				int sampleRate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_ALARM);
+				short[] samples = ToneSynthesizer.render(tone, sampleRate);
+
+				ByteBuffer data = ByteBuffer.allocateDirect(samples.length * PcmClip.BYTES_PER_SAMPLE).order(ByteOrder.nativeOrder());
+				data.asShortBuffer().put(samples);
+				clip = new PcmClip(Uri.fromParts(TONE_SCHEME, tone.toString(), null), data, sampleRate, 1);
+				mTones.put(spec, clip);
+				Timber.d("Synthesized tone \"%s\": %d frames @ %d Hz in %d ms", spec, clip.getFrameCount(), sampleRate,
+						(System.nanoTime() - startNanos) / 1000000);
+			} catch (IllegalArgumentException e) {
+				Timber.e(e, "Invalid alert tone \"%s\": %s", spec, e.getLocalizedMessage());
+			}
+
+			return clip;
+		}
+	}
+
+	/**
+	 * Returns the decoded clip for a raw resource, loading it on first use.
+	 *
+	 * @return null if the resource could not be decoded
+	 */
+	public PcmClip getClip(int resId) {
+		return getClip(getResourceUri(mContext, resId));
+	}
+
+	/**
+	 * Returns the decoded clip for any sound Uri, loading it on first use.
+	 *
+	 * @return null if the sound could not be decoded
+	 */
+	public PcmClip getClip(Uri uri) {
+		PcmClip clip = mClips.get(uri.toString());
+		if (clip != null)
+			return clip;
+
+		synchronized (this) {
+			clip = mClips.get(uri.toString());
+			if (clip != null)
+				return clip;
+
+			try {
+				long startNanos = System.nanoTime();
+				clip = PcmDiskCache.getInstance().get(uri);
+				mClips.put(uri.toString(), clip);
+				Timber.d("Loaded %s: %d frames @ %d Hz x %d ch in %d ms", uri, clip.getFrameCount(),
+						clip.getSampleRate(), clip.getChannelCount(), (System.nanoTime() - startNanos) / 1000000);
+			} catch (Exception e) {
+				Timber.e(e, "Error decoding %s: %s", uri, e.getLocalizedMessage());
+			}
+
+			return clip;
+		}
+	}
+}
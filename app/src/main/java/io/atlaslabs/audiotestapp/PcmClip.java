@@ -0,0 +1,65 @@
+package io.atlaslabs.audiotestapp;
+
+import android.media.AudioFormat;
+import android.net.Uri;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoded 16-bit PCM audio held in a direct {@link ByteBuffer}, ready to be handed to an
+ * {@link android.media.AudioTrack} without further decoding or copying.
+ */
+public final class PcmClip {
+	public static final int BYTES_PER_SAMPLE = 2;
+
+	private final Uri mSourceUri;
+	private final ByteBuffer mData;
+	private final int mSampleRate;
+	private final int mChannelCount;
+
+	PcmClip(Uri sourceUri, ByteBuffer data, int sampleRate, int channelCount) {
+		mSourceUri = sourceUri;
+		mData = data;
+		mSampleRate = sampleRate;
+		mChannelCount = channelCount;
+	}
+
+	public Uri getSourceUri() {
+		return mSourceUri;
+	}
+
+	/**
+	 * Returns an independent view of the samples, positioned at the start. The underlying memory is shared.
+	 */
+	public ByteBuffer getData() {
+		ByteBuffer data = mData.duplicate().order(ByteOrder.nativeOrder());
+		data.clear();
+		return data;
+	}
+
+	public int getSizeInBytes() {
+		return mData.capacity();
+	}
+
+	public int getSampleRate() {
+		return mSampleRate;
+	}
+
+	public int getChannelCount() {
+		return mChannelCount;
+	}
+
+	public int getChannelMask() {
+		return mChannelCount == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+	}
+
+	public int getFrameCount() {
+		return mData.capacity() / (mChannelCount * BYTES_PER_SAMPLE);
+	}
+
+	public long getDurationNanos() {
+		return TimeUnit.SECONDS.toNanos(getFrameCount()) / mSampleRate;
+	}
+}
@@ -0,0 +1,161 @@
+package io.atlaslabs.audiotestapp;
+
+import android.content.Context;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes compressed audio (e.g. the MP3s in res/raw) to 16-bit PCM with {@link MediaCodec}.
+ * Output is streamed to a {@link Sink} one codec buffer at a time, so callers decide whether
+ * to keep the samples or only inspect them.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public final class PcmDecoder {
+	private static final long DEQUEUE_TIMEOUT_US = 10000;
+
+	// Can't be instantiated
+	private PcmDecoder() {
+	}
+
+	public interface Sink {
+		/**
+		 * Called before the first samples, and again if the codec changes its output format.
+		 */
+		void onFormat(int sampleRate, int channelCount);
+
+		/**
+		 * Receives the next block of interleaved 16-bit samples. The buffer is only valid for the
+		 * duration of the call.
+		 */
+		void onPcm(ByteBuffer pcm);
+	}
+
+	/**
+	 * Decodes {@code uri} completely and keeps the result in a direct buffer.
+	 */
+	public static PcmClip decode(Context context, Uri uri) throws IOException {
+		ClipSink sink = new ClipSink();
+		decode(context, uri, sink);
+
+		return new PcmClip(uri, sink.toDirectBuffer(), sink.mSampleRate, sink.mChannelCount);
+	}
+
+	public static void decode(Context context, Uri uri, Sink sink) throws IOException {
+		MediaExtractor extractor = new MediaExtractor();
+		MediaCodec codec = null;
+
+		try {
+			extractor.setDataSource(context, uri, null);
+
+			int trackIndex = selectAudioTrack(extractor);
+			if (trackIndex < 0)
+				throw new IOException("No audio track found in " + uri);
+
+			extractor.selectTrack(trackIndex);
+			MediaFormat format = extractor.getTrackFormat(trackIndex);
+			sink.onFormat(format.getInteger(MediaFormat.KEY_SAMPLE_RATE), format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+
+			codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+			codec.configure(format, null, null, 0);
+			codec.start();
+
+			MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+			boolean inputDone = false;
+			boolean outputDone = false;
+
+			while (!outputDone) {
+				if (!inputDone) {
+					int inputIndex = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+					if (inputIndex >= 0) {
+						ByteBuffer input = codec.getInputBuffer(inputIndex);
+						int size = input != null ? extractor.readSampleData(input, 0) : -1;
+						if (size < 0) {
+							codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+							inputDone = true;
+						} else {
+							codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+							extractor.advance();
+						}
+					}
+				}
+
+				int outputIndex = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+				if (outputIndex >= 0) {
+					ByteBuffer output = codec.getOutputBuffer(outputIndex);
+					if (output != null && info.size > 0) {
+						output.position(info.offset);
+						output.limit(info.offset + info.size);
+						sink.onPcm(output.slice().order(ByteOrder.nativeOrder()));
+					}
+
+					codec.releaseOutputBuffer(outputIndex, false);
+					outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+				} else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+					MediaFormat outputFormat = codec.getOutputFormat();
+					sink.onFormat(outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+							outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+				}
+			}
+		} finally {
+			if (codec != null) {
+				try {
+					codec.stop();
+				} catch (IllegalStateException ignored) {
+				}
+				codec.release();
+			}
+
+			extractor.release();
+		}
+	}
+
+	private static int selectAudioTrack(MediaExtractor extractor) {
+		for (int i = 0; i < extractor.getTrackCount(); i++) {
+			String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+			if (mime != null && mime.startsWith("audio/"))
+				return i;
+		}
+
+		return -1;
+	}
+
+	private static final class ClipSink implements Sink {
+		private final ByteArrayOutputStream mPcm = new ByteArrayOutputStream();
+		private byte[] mChunk = new byte[0];
+		private int mSampleRate;
+		private int mChannelCount;
+
+		@Override
+		public void onFormat(int sampleRate, int channelCount) {
+			mSampleRate = sampleRate;
+			mChannelCount = channelCount;
+		}
+
+		@Override
+		public void onPcm(ByteBuffer pcm) {
+			int size = pcm.remaining();
+			if (mChunk.length < size)
+				mChunk = new byte[size];
+
+			pcm.get(mChunk, 0, size);
+			mPcm.write(mChunk, 0, size);
+		}
+
+		ByteBuffer toDirectBuffer() {
+			ByteBuffer data = ByteBuffer.allocateDirect(mPcm.size()).order(ByteOrder.nativeOrder());
+			data.put(mPcm.toByteArray());
+			data.flip();
+			return data;
+		}
+	}
+}
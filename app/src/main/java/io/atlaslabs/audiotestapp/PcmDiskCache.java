@@ -0,0 +1,410 @@
+package io.atlaslabs.audiotestapp;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import timber.log.Timber;
+
+/**
+ * Decoded 16-bit PCM for any sound Uri, kept in the app's cache directory so a sound is decoded
+ * once rather than on every process start. Cached sounds are memory mapped, not read or copied:
+ * the returned {@link PcmClip} is backed by the page cache, and playing it after a restart
+ * involves no decoder.
+ * <p>
+ * Each file starts with a header recording the source Uri, the size and modification time the
+ * source had when it was decoded, when it was decoded, and the PCM format. An entry whose source
+ * has since changed, or that is truncated or from another format version, is decoded again. Files
+ * are evicted least recently used first once they exceed the PCM_CACHE_MAX_MB resource.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public final class PcmDiskCache {
+	private static final String DIRECTORY = "pcm";
+	private static final String EXTENSION = ".pcm";
+	// "PCM1"
+	private static final int MAGIC = 0x50434D31;
+	private static final int FORMAT_VERSION = 1;
+	// magic, version, byte order, sample rate, channel count, data size, source size, source
+	// modified, decoded at, Uri length; the Uri follows, then the samples 8-byte aligned
+	private static final int HEADER_FIXED_BYTES = 5 * 4 + 4 * 8 + 4;
+
+	private static PcmDiskCache mInstance = null;
+	private final Context mContext;
+	private final File mDirectory;
+	private final long mMaxBytes;
+
+	private long mHits = 0;
+	private long mMisses = 0;
+	private long mStale = 0;
+	private long mEvictions = 0;
+
+	private PcmDiskCache(Application app) {
+		mContext = app;
+		mDirectory = new File(app.getCacheDir(), DIRECTORY);
+		mMaxBytes = Long.parseLong(app.getString(R.string.PCM_CACHE_MAX_MB)) * 1024 * 1024;
+	}
+
+	public static void setup(Application app) {
+		if (mInstance != null)
+			return;
+
+		mInstance = new PcmDiskCache(app);
+	}
+
+	public static PcmDiskCache getInstance() {
+		Startup.require(Startup.PCM_DISK_CACHE);
+		return mInstance;
+	}
+
+	/**
+	 * Returns {@code uri} decoded, mapping the cached file if it is current and decoding and
+	 * caching the sound otherwise. Blocks, so call off the main thread.
+	 *
+	 * @throws IOException if the sound could not be decoded
+	 */
+	public synchronized PcmClip get(Uri uri) throws IOException {
+		File file = getFile(uri);
+		Source source = Source.of(mContext, uri);
+
+		PcmClip clip = map(file, uri, source);
+		if (clip != null) {
+			mHits++;
+			// Modification time orders eviction
+			file.setLastModified(System.currentTimeMillis());
+			return clip;
+		}
+
+		mMisses++;
+		long startNanos = System.nanoTime();
+		write(file, uri, source);
+		trim(file);
+
+		clip = map(file, uri, source);
+		if (clip == null)
+			throw new IOException("Unable to read back cached PCM for " + uri);
+
+		Timber.d("Cached %s: %d frames @ %d Hz x %d ch, %d KB in %d ms", uri, clip.getFrameCount(), clip.getSampleRate(),
+				clip.getChannelCount(), file.length() / 1024, (System.nanoTime() - startNanos) / 1000000);
+		return clip;
+	}
+
+	/**
+	 * Deletes every cached file. Clips already returned stay valid.
+	 */
+	public synchronized void clear() {
+		File[] files = mDirectory.listFiles();
+		if (files == null)
+			return;
+
+		for (File file : files) {
+			if (!file.delete())
+				Timber.w("Unable to delete %s", file);
+		}
+	}
+
+	public synchronized String dump() {
+		File[] files = mDirectory.listFiles();
+		long bytes = 0;
+		if (files != null) {
+			for (File file : files)
+				bytes += file.length();
+		}
+
+		return String.format(Locale.US, "%d files, %.1f of %d MB; %d hits, %d misses, %d stale, %d evictions",
+				files != null ? files.length : 0, bytes / (1024.0 * 1024.0), mMaxBytes / (1024 * 1024), mHits, mMisses,
+				mStale, mEvictions);
+	}
+
+	/**
+	 * Maps the samples of a current cache file.
+	 *
+	 * @return null if there is no entry for {@code uri} or it is stale or unreadable, in which case it is deleted
+	 */
+	private PcmClip map(File file, Uri uri, Source source) {
+		if (!file.exists())
+			return null;
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_FIXED_BYTES);
+			if (channel.read(header, 0) != HEADER_FIXED_BYTES)
+				return discard(file, "truncated header");
+
+			header.flip();
+			if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION)
+				return discard(file, "unknown format");
+			if (header.getInt() != byteOrderId(ByteOrder.nativeOrder()))
+				return discard(file, "foreign byte order");
+
+			int sampleRate = header.getInt();
+			int channelCount = header.getInt();
+			long dataBytes = header.getLong();
+			long sourceSize = header.getLong();
+			long sourceModified = header.getLong();
+			header.getLong();
+			int uriLength = header.getInt();
+			if (uriLength < 0 || uriLength > channel.size())
+				return discard(file, "corrupt header");
+
+			ByteBuffer uriBytes = ByteBuffer.allocate(uriLength);
+			if (channel.read(uriBytes, HEADER_FIXED_BYTES) != uriLength)
+				return discard(file, "truncated header");
+			if (!uri.toString().equals(new String(uriBytes.array(), StandardCharsets.UTF_8)))
+				return discard(file, "different source");
+			if (!source.matches(sourceSize, sourceModified)) {
+				mStale++;
+				return discard(file, "source changed");
+			}
+
+			long dataOffset = getDataOffset(uriLength);
+			if (channel.size() != dataOffset + dataBytes)
+				return discard(file, "truncated data");
+
+			// The mapping outlives the channel
+			ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, dataBytes).order(ByteOrder.nativeOrder());
+			return new PcmClip(uri, data, sampleRate, channelCount);
+		} catch (IOException e) {
+			Timber.e(e, "Error reading %s: %s", file, e.getLocalizedMessage());
+			return discard(file, "unreadable");
+		}
+	}
+
+	private PcmClip discard(File file, String reason) {
+		Timber.i("Discarding cached PCM %s: %s", file.getName(), reason);
+		if (!file.delete())
+			Timber.w("Unable to delete %s", file);
+
+		return null;
+	}
+
+	/**
+	 * Decodes {@code uri} straight into a temporary file, then renames it into place, so a crash
+	 * mid-decode never leaves a partial entry behind.
+	 */
+	private void write(File file, Uri uri, Source source) throws IOException {
+		if (!mDirectory.isDirectory() && !mDirectory.mkdirs())
+			throw new IOException("Unable to create " + mDirectory);
+
+		byte[] uriBytes = uri.toString().getBytes(StandardCharsets.UTF_8);
+		long dataOffset = getDataOffset(uriBytes.length);
+		File temp = File.createTempFile("pcm", ".tmp", mDirectory);
+
+		try {
+			try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+				FileChannel channel = raf.getChannel();
+				FileSink sink = new FileSink(channel, dataOffset);
+				try {
+					PcmDecoder.decode(mContext, uri, sink);
+				} catch (IllegalStateException e) {
+					if (e.getCause() instanceof IOException)
+						throw (IOException) e.getCause();
+					throw e;
+				}
+				if (sink.mFormatChanged)
+					throw new IOException("Output format of " + uri + " changed while decoding");
+
+				ByteBuffer header = ByteBuffer.allocate(HEADER_FIXED_BYTES + uriBytes.length);
+				header.putInt(MAGIC)
+						.putInt(FORMAT_VERSION)
+						.putInt(byteOrderId(ByteOrder.nativeOrder()))
+						.putInt(sink.mSampleRate)
+						.putInt(sink.mChannelCount)
+						.putLong(sink.mDataBytes)
+						.putLong(source.mSize)
+						.putLong(source.mModified)
+						.putLong(System.currentTimeMillis())
+						.putInt(uriBytes.length)
+						.put(uriBytes);
+				header.flip();
+				channel.write(header, 0);
+				channel.truncate(dataOffset + sink.mDataBytes);
+			}
+
+			if (!temp.renameTo(file))
+				throw new IOException("Unable to rename " + temp + " to " + file);
+		} finally {
+			if (temp.exists() && !temp.delete())
+				Timber.w("Unable to delete %s", temp);
+		}
+	}
+
+	/**
+	 * Evicts least recently used files until the cache fits, keeping {@code keep}. Also removes
+	 * temporary files left by a decode that was interrupted by the process dying.
+	 */
+	private void trim(File keep) {
+		File[] files = mDirectory.listFiles();
+		if (files == null)
+			return;
+
+		long bytes = 0;
+		for (File file : files)
+			bytes += file.length();
+
+		Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+		for (File file : files) {
+			boolean temporary = !file.getName().endsWith(EXTENSION);
+			if (file.equals(keep) || (!temporary && bytes <= mMaxBytes))
+				continue;
+
+			long length = file.length();
+			if (file.delete()) {
+				bytes -= length;
+				if (!temporary)
+					mEvictions++;
+			}
+		}
+	}
+
+	private File getFile(Uri uri) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(uri.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder(digest.length * 2 + EXTENSION.length());
+			for (byte b : digest)
+				name.append(String.format(Locale.US, "%02x", b));
+
+			return new File(mDirectory, name.append(EXTENSION).toString());
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-1 is always available on Android
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long getDataOffset(int uriLength) {
+		return (HEADER_FIXED_BYTES + uriLength + 7) & ~7L;
+	}
+
+	private static int byteOrderId(ByteOrder order) {
+		return order == ByteOrder.LITTLE_ENDIAN ? 1 : 2;
+	}
+
+	/**
+	 * Identifies the version of a source: its size and modification time. Either is 0 when
+	 * unknown. Bundled resources change only with the package, so they use its update time.
+	 */
+	private static final class Source {
+		private final long mSize;
+		private final long mModified;
+
+		private Source(long size, long modified) {
+			mSize = size;
+			mModified = modified;
+		}
+
+		static Source of(Context context, Uri uri) {
+			String scheme = uri.getScheme();
+			if (ContentResolver.SCHEME_FILE.equals(scheme)) {
+				File file = new File(uri.getPath());
+				return new Source(file.length(), file.lastModified());
+			}
+
+			long size = 0;
+			try (AssetFileDescriptor afd = context.getContentResolver().openAssetFileDescriptor(uri, "r")) {
+				if (afd != null && afd.getLength() != AssetFileDescriptor.UNKNOWN_LENGTH)
+					size = afd.getLength();
+			} catch (Exception e) {
+				Timber.w("Unable to stat %s: %s", uri, e.getLocalizedMessage());
+			}
+
+			if (ContentResolver.SCHEME_ANDROID_RESOURCE.equals(scheme))
+				return new Source(size, getPackageUpdateTime(context, uri.getAuthority()));
+
+			return new Source(size, getContentModified(context, uri));
+		}
+
+		/**
+		 * A source whose size or modification time could not be determined is assumed unchanged
+		 * in that respect.
+		 */
+		boolean matches(long size, long modified) {
+			return (mSize == 0 || mSize == size) && (mModified == 0 || mModified == modified);
+		}
+
+		private static long getPackageUpdateTime(Context context, String packageName) {
+			try {
+				return context.getPackageManager().getPackageInfo(packageName, 0).lastUpdateTime;
+			} catch (PackageManager.NameNotFoundException e) {
+				return 0;
+			}
+		}
+
+		private static long getContentModified(Context context, Uri uri) {
+			try (Cursor cursor = context.getContentResolver().query(uri, null, null, null, null)) {
+				if (cursor == null || !cursor.moveToFirst())
+					return 0;
+
+				int column = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+				if (column >= 0 && !cursor.isNull(column))
+					return cursor.getLong(column);
+
+				// MediaStore reports seconds
+				column = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+				if (column >= 0 && !cursor.isNull(column))
+					return cursor.getLong(column) * 1000;
+			} catch (Exception e) {
+				Timber.w("Unable to query %s: %s", uri, e.getLocalizedMessage());
+			}
+
+			return 0;
+		}
+	}
+
+	private static final class FileSink implements PcmDecoder.Sink {
+		private final FileChannel mChannel;
+		private long mPosition;
+		private long mDataBytes = 0;
+		private int mSampleRate;
+		private int mChannelCount;
+		private boolean mFormatChanged = false;
+
+		FileSink(FileChannel channel, long dataOffset) {
+			mChannel = channel;
+			mPosition = dataOffset;
+		}
+
+		@Override
+		public void onFormat(int sampleRate, int channelCount) {
+			// The codec reports its output format before the first samples; a change after them can't be stored
+			if (mDataBytes > 0 && (sampleRate != mSampleRate || channelCount != mChannelCount))
+				mFormatChanged = true;
+
+			mSampleRate = sampleRate;
+			mChannelCount = channelCount;
+		}
+
+		@Override
+		public void onPcm(ByteBuffer pcm) {
+			try {
+				while (pcm.hasRemaining()) {
+					int written = mChannel.write(pcm, mPosition);
+					mPosition += written;
+					mDataBytes += written;
+				}
+			} catch (IOException e) {
+				// Unwrapped by write()
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package io.atlaslabs.audiotestapp;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.atlaslabs.audiotestapp.core.LatencyHistogram;
+import io.reactivex.BackpressureOverflowStrategy;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import timber.log.Timber;
+
+/**
+ * Serializes user playback requests into a {@link Flowable} that plays at most a fixed number of
+ * sounds at once, so a stuck button or an automated trigger can't open players until the mixer
+ * runs out of tracks. A request holds its slot until its playback completes.
+ * <p>
+ * While every slot is busy, requests are handled by the overflow policy:
+ * - {@link #OVERFLOW_LATEST}: one request waits for the next free slot; a newer request replaces it (coalesced)
+ * - {@link #OVERFLOW_DROP}: requests are rejected
+ * Each decision is logged and counted for {@link #dump()}.
+ */
+public final class PlaybackPipeline {
+	public static final String OVERFLOW_LATEST = "LATEST";
+	public static final String OVERFLOW_DROP = "DROP";
+
+	private final FlowableProcessor<Request> mRequests = PublishProcessor.<Request>create().toSerialized();
+	private final int mMaxConcurrent;
+	private final boolean mDropOnOverflow;
+	private final Disposable mSubscription;
+
+	private final AtomicInteger mActive = new AtomicInteger();
+	private final AtomicLong mSubmitted = new AtomicLong();
+	private final AtomicLong mStarted = new AtomicLong();
+	private final AtomicLong mCompleted = new AtomicLong();
+	private final AtomicLong mFailed = new AtomicLong();
+	private final AtomicLong mCoalesced = new AtomicLong();
+	private final AtomicLong mRejected = new AtomicLong();
+	private final LatencyHistogram mQueueWait = new LatencyHistogram("playback queue wait");
+
+	/**
+	 * @param overflow {@link #OVERFLOW_LATEST} or {@link #OVERFLOW_DROP}; anything else is treated as latest
+	 */
+	public PlaybackPipeline(int maxConcurrent, String overflow) {
+		mMaxConcurrent = Math.max(1, maxConcurrent);
+		mDropOnOverflow = OVERFLOW_DROP.equalsIgnoreCase(overflow.trim());
+
+		// flatMap requests a new item only when a slot frees, so overflow is decided here
+		Flowable<Request> requests = mDropOnOverflow
+				? mRequests.onBackpressureDrop(this::onRejected)
+				: mRequests.onBackpressureBuffer(1, this::onCoalesced, BackpressureOverflowStrategy.DROP_OLDEST);
+
+		mSubscription = requests
+				.flatMapCompletable(this::play, false, mMaxConcurrent)
+				.subscribe(() -> { }, throwable -> Timber.e(throwable, "Playback pipeline failed: %s", throwable.getLocalizedMessage()));
+	}
+
+	/**
+	 * Requests playback. Returns immediately; whether the request plays now, waits or is dropped is logged.
+	 *
+	 * @param name     describes the request in logs
+	 * @param playback started on subscription, completing when playback ends; disposing should stop playback
+	 */
+	public void submit(String name, Completable playback) {
+		mSubmitted.incrementAndGet();
+		if (mActive.get() >= mMaxConcurrent)
+			Timber.d("Playback of %s %s: %d/%d players busy", name, mDropOnOverflow ? "rejected" : "queued",
+					mActive.get(), mMaxConcurrent);
+
+		mRequests.onNext(new Request(name, playback));
+	}
+
+	/**
+	 * Stops the pipeline and any playback it started.
+	 */
+	public void dispose() {
+		mSubscription.dispose();
+	}
+
+	public String dump() {
+		return String.format(Locale.US, "%d/%d playing, overflow=%s, submitted=%d, started=%d, completed=%d, failed=%d, coalesced=%d, rejected=%d\n%s",
+				mActive.get(), mMaxConcurrent, mDropOnOverflow ? OVERFLOW_DROP : OVERFLOW_LATEST, mSubmitted.get(),
+				mStarted.get(), mCompleted.get(), mFailed.get(), mCoalesced.get(), mRejected.get(), mQueueWait.summary());
+	}
+
+	private Completable play(Request request) {
+		return request.mPlayback
+				.doOnSubscribe(disposable -> {
+					long waitNanos = System.nanoTime() - request.mSubmittedNanos;
+					mQueueWait.record(waitNanos);
+					mStarted.incrementAndGet();
+					Timber.d("Playback of %s started after %d ms; %d/%d players busy", request.mName, waitNanos / 1000000,
+							mActive.incrementAndGet(), mMaxConcurrent);
+				})
+				.doOnComplete(mCompleted::incrementAndGet)
+				.doOnError(throwable -> {
+					mFailed.incrementAndGet();
+					Timber.e(throwable, "Playback of %s failed: %s", request.mName, throwable.getLocalizedMessage());
+				})
+				.doFinally(mActive::decrementAndGet)
+				// A failed playback only frees its slot
+				.onErrorComplete();
+	}
+
+	private void onRejected(Request request) {
+		mRejected.incrementAndGet();
+		Timber.w("Playback of %s dropped: all %d players busy", request.mName, mMaxConcurrent);
+	}
+
+	private void onCoalesced() {
+		mCoalesced.incrementAndGet();
+		Timber.d("Waiting playback request replaced by a newer one");
+	}
+
+	private static final class Request {
+		private final String mName;
+		private final Completable mPlayback;
+		private final long mSubmittedNanos = System.nanoTime();
+
+		Request(String name, Completable playback) {
+			mName = name;
+			mPlayback = playback;
+		}
+	}
+}
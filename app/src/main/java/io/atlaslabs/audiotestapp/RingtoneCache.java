@@ -0,0 +1,241 @@
+package io.atlaslabs.audiotestapp;
+
+import android.app.Application;
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.Ringtone;
+import android.media.RingtoneManager;
+import android.net.Uri;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import io.atlaslabs.audiotestapp.util.Utils;
+import timber.log.Timber;
+
+/**
+ * Bounded LRU cache of prepared {@link Ringtone} instances, keyed by sound Uri and audio usage /
+ * content type. Resolving a ringtone costs a content resolver lookup and a new player, so repeated
+ * plays of the same sound reuse the instance with its audio attributes already applied.
+ * <p>
+ * Ringtones are leased: {@link #acquire} hands out a ringtone no one else holds, taking it out of
+ * the cache, and {@link Lease#release()} puts it back. Callers of the same sound each get their own
+ * instance, so one caller stopping, or an eviction, never silences another's playback.
+ * <p>
+ * {@link Ringtone#stop()} releases the ringtone's local MediaPlayer, and a later play() falls back
+ * to the much slower remote player. Only ringtones that finished on their own are therefore
+ * returned to the cache; one that had to be stopped is dropped. Ringtone has no release() of its
+ * own, so stop() is also how an evicted ringtone frees its player.
+ */
+public final class RingtoneCache {
+	private static final int MAX_ENTRIES = 8;
+
+	private static RingtoneCache mInstance = null;
+	private final Context mContext;
+	private final LinkedHashMap<Key, Ringtone> mRingtones;
+
+	private long mHits = 0;
+	private long mMisses = 0;
+	private long mEvictions = 0;
+	private int mLeased = 0;
+
+	private RingtoneCache(Application app) {
+		mContext = app;
+		// Access order makes iteration order least recently used first
+		mRingtones = new LinkedHashMap<Key, Ringtone>(MAX_ENTRIES, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Ringtone> eldest) {
+				if (size() <= MAX_ENTRIES)
+					return false;
+
+				evict(eldest.getKey(), eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	public static void setup(Application app) {
+		if (mInstance != null)
+			return;
+
+		mInstance = new RingtoneCache(app);
+	}
+
+	public static RingtoneCache getInstance() {
+		Startup.require(Startup.RINGTONE_CACHE);
+		return mInstance;
+	}
+
+	/**
+	 * Leases a ringtone for {@code uri} with the given AudioAttributes usage and content type
+	 * applied: the cached one if it is idle, otherwise a newly resolved one. Before API 21 the usage
+	 * is mapped to a stream type.
+	 *
+	 * @return null if the Uri could not be resolved
+	 */
+	public synchronized Lease acquire(Uri uri, int usage, int contentType) {
+		Key key = new Key(uri, usage, contentType);
+		Ringtone ringtone = mRingtones.remove(key);
+		if (ringtone != null) {
+			mHits++;
+			mLeased++;
+			return new Lease(key, ringtone);
+		}
+
+		mMisses++;
+		ringtone = RingtoneManager.getRingtone(mContext, uri);
+		if (ringtone == null) {
+			Timber.w("Unable to resolve ringtone %s", uri);
+			return null;
+		}
+
+		if (Utils.isAtLeastL()) {
+			ringtone.setAudioAttributes(new AudioAttributes.Builder()
+					.setUsage(usage)
+					.setContentType(contentType)
+					.build());
+		} else {
+			//noinspection deprecation
+			ringtone.setStreamType(toStreamType(usage));
+		}
+
+		mLeased++;
+		return new Lease(key, ringtone);
+	}
+
+	/**
+	 * Frees and drops every idle ringtone. Leased ones are released by their holders.
+	 */
+	public synchronized void clear() {
+		for (Map.Entry<Key, Ringtone> entry : mRingtones.entrySet())
+			evict(entry.getKey(), entry.getValue());
+
+		mRingtones.clear();
+	}
+
+	public synchronized String dump() {
+		long lookups = mHits + mMisses;
+		return String.format(Locale.US, "%d/%d cached, %d leased, hits=%d, misses=%d, evictions=%d, hit rate=%.1f%%",
+				mRingtones.size(), MAX_ENTRIES, mLeased, mHits, mMisses, mEvictions,
+				lookups > 0 ? 100.0 * mHits / lookups : 0.0);
+	}
+
+	/**
+	 * @param ringtone null if the lease's ringtone was stopped and can't be reused
+	 */
+	private synchronized void checkin(Key key, Ringtone ringtone) {
+		mLeased--;
+		// Another lease of the same sound may have been returned first; keep that one
+		if (ringtone != null && !mRingtones.containsKey(key))
+			mRingtones.put(key, ringtone);
+	}
+
+	private void evict(Key key, Ringtone ringtone) {
+		mEvictions++;
+		Timber.v("Evicting ringtone %s", key.mUri);
+		stop(key, ringtone);
+	}
+
+	// Releases the ringtone's local player
+	private static void stop(Key key, Ringtone ringtone) {
+		try {
+			ringtone.stop();
+		} catch (Exception e) {
+			Timber.e(e, "Error stopping ringtone %s: %s", key.mUri, e.getLocalizedMessage());
+		}
+	}
+
+	private static int toStreamType(int usage) {
+		switch (usage) {
+			case AudioAttributes.USAGE_ALARM:
+				return AudioManager.STREAM_ALARM;
+			case AudioAttributes.USAGE_NOTIFICATION_RINGTONE:
+				return AudioManager.STREAM_RING;
+			case AudioAttributes.USAGE_MEDIA:
+				return AudioManager.STREAM_MUSIC;
+			default:
+				return AudioManager.STREAM_NOTIFICATION;
+		}
+	}
+
+	/**
+	 * A ringtone held by one caller until {@link #release()}. Stop it through {@link #stop()}, not
+	 * {@link Ringtone#stop()}, so it isn't returned to the cache without its player.
+	 */
+	public final class Lease {
+		private final Key mKey;
+		private final Ringtone mRingtone;
+		private boolean mStopped = false;
+		private boolean mReleased = false;
+
+		private Lease(Key key, Ringtone ringtone) {
+			mKey = key;
+			mRingtone = ringtone;
+		}
+
+		public Ringtone getRingtone() {
+			return mRingtone;
+		}
+
+		/**
+		 * Stops the ringtone. It is dropped instead of cached when the lease is released.
+		 */
+		public void stop() {
+			synchronized (this) {
+				mStopped = true;
+			}
+
+			RingtoneCache.stop(mKey, mRingtone);
+		}
+
+		/**
+		 * Returns the ringtone to the cache if it finished on its own; one still playing is stopped
+		 * and dropped. Further calls do nothing.
+		 */
+		public void release() {
+			boolean stopped;
+			synchronized (this) {
+				if (mReleased)
+					return;
+				mReleased = true;
+				stopped = mStopped;
+			}
+
+			if (!stopped && mRingtone.isPlaying()) {
+				stopped = true;
+				RingtoneCache.stop(mKey, mRingtone);
+			}
+			checkin(mKey, stopped ? null : mRingtone);
+		}
+	}
+
+	private static final class Key {
+		private final Uri mUri;
+		private final int mUsage;
+		private final int mContentType;
+
+		Key(Uri uri, int usage, int contentType) {
+			mUri = uri;
+			mUsage = usage;
+			mContentType = contentType;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+
+			Key other = (Key) o;
+			return mUsage == other.mUsage && mContentType == other.mContentType && mUri.equals(other.mUri);
+		}
+
+		@Override
+		public int hashCode() {
+			return (mUri.hashCode() * 31 + mUsage) * 31 + mContentType;
+		}
+	}
+}
@@ -0,0 +1,351 @@
+package io.atlaslabs.audiotestapp;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import io.atlaslabs.audiotestapp.core.LatencyHistogram;
+import timber.log.Timber;
+
+/**
+ * Unattended soak test of the alert output path. Plays the alert sound through one MediaPlayer
+ * again and again, for a number of iterations or until a time limit, the way a looping alert
+ * replays its clip. For each iteration it records whether playback started, how long it took to
+ * start, how long it actually played compared to the clip duration, and any onError / onInfo
+ * codes. A player that reports an error is released and a new one is created for the next
+ * iteration.
+ * <p>
+ * Each iteration is appended to a CSV report in the app's files directory as soon as it ends, so a
+ * crash keeps everything recorded up to that point. A summary is written next to it when the run
+ * ends. Everything runs on the test's own HandlerThread, which also receives the player callbacks.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public final class SoakTest implements MediaPlayer.OnErrorListener, MediaPlayer.OnInfoListener,
+		MediaPlayer.OnCompletionListener {
+	public static final int OUTCOME_COMPLETED = 0;
+	public static final int OUTCOME_NOT_STARTED = 1;
+	public static final int OUTCOME_ERROR = 2;
+	public static final int OUTCOME_STALLED = 3;
+	public static final int OUTCOME_CANCELLED = 4;
+	private static final String[] OUTCOME_NAMES = {"completed", "not_started", "error", "stalled", "cancelled"};
+
+	private static final String REPORT_HEADER = "iteration,elapsed_s,outcome,new_player,start_latency_ms,duration_ms,expected_ms,errors,infos\n";
+	private static final long POLL_MS = 10;
+	// Time from start() to audible position before an iteration counts as not started
+	private static final long START_TIMEOUT_MS = 2000;
+	// Time past the clip duration before a playing iteration counts as stalled
+	private static final long STALL_GRACE_MS = 5000;
+	// Plays further than this from the clip duration are counted as duration mismatches
+	private static final long DURATION_TOLERANCE_MS = 250;
+	private static final String NOTIFICATION_TITLE = "Soak test";
+
+	private final Context mContext;
+	private final Uri mSoundUri;
+	private final int mMaxIterations;
+	private final long mMaxDurationMs;
+	private final long mIntervalMs;
+	private final HandlerThread mHandlerThread;
+	private final Handler mHandler;
+	private final AudioAttributes mAttributes = new AudioAttributes.Builder()
+			.setUsage(AudioAttributes.USAGE_ALARM)
+			.setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+			.build();
+	private final LatencyHistogram mStartLatency = new LatencyHistogram("Soak start latency");
+	private final int[] mOutcomeCounts = new int[OUTCOME_NAMES.length];
+	private final Runnable mNextIteration = this::runIteration;
+	private final Runnable mPollStart = this::pollStart;
+	private final Runnable mStallCheck = () -> endIteration(OUTCOME_STALLED);
+	private volatile boolean mRunning = false;
+	private volatile int mIteration = 0;
+
+	// Only touched on the handler thread
+	private File mReportFile;
+	private Writer mReport;
+	private long mStartRealtimeMs;
+	private MediaPlayer mPlayer;
+	private boolean mNewPlayer;
+	private long mRequestedNanos;
+	private long mStartedNanos;
+	private int mExpectedMs;
+	private final StringBuilder mErrors = new StringBuilder();
+	private final StringBuilder mInfos = new StringBuilder();
+	private int mDurationMismatches = 0;
+	private long mMaxDurationErrorMs = 0;
+
+	/**
+	 * @param maxIterations iterations to run, or 0 for no limit
+	 * @param maxDurationMs run time in milliseconds, or 0 for no limit
+	 * @param intervalMs    silence between the end of one iteration and the start of the next
+	 */
+	public SoakTest(Context context, Uri soundUri, int maxIterations, long maxDurationMs, long intervalMs) {
+		if (maxIterations <= 0 && maxDurationMs <= 0)
+			throw new IllegalArgumentException("A soak test needs an iteration or time limit");
+
+		mContext = context.getApplicationContext();
+		mSoundUri = soundUri;
+		mMaxIterations = maxIterations;
+		mMaxDurationMs = maxDurationMs;
+		mIntervalMs = intervalMs;
+
+		mHandlerThread = new HandlerThread(SoakTest.class.getSimpleName());
+		mHandlerThread.start();
+		mHandler = new Handler(mHandlerThread.getLooper());
+	}
+
+	public void start() {
+		mRunning = true;
+		mHandler.post(() -> {
+			mStartRealtimeMs = SystemClock.elapsedRealtime();
+			String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+			mReportFile = new File(mContext.getFilesDir(), "soak_" + stamp + ".csv");
+			try {
+				mReport = new FileWriter(mReportFile);
+				mReport.write(REPORT_HEADER);
+				mReport.flush();
+			} catch (IOException e) {
+				Timber.e(e, "Unable to open soak report %s: %s", mReportFile, e.getLocalizedMessage());
+				mRunning = false;
+				mHandlerThread.quitSafely();
+				return;
+			}
+
+			Timber.i("Soak test of %s started: %d iterations, %d ms limit, report %s", mSoundUri, mMaxIterations,
+					mMaxDurationMs, mReportFile);
+			runIteration();
+		});
+	}
+
+	/**
+	 * Ends the run, cancelling the iteration in progress, and writes the summary. Does not block.
+	 */
+	public void stop() {
+		mHandler.post(this::finish);
+	}
+
+	public boolean isRunning() {
+		return mRunning;
+	}
+
+	/**
+	 * One-line progress, safe to call from any thread
+	 */
+	public String getStatus() {
+		return String.format(Locale.US, "%s soak test, iteration %d, %s", mRunning ? "running" : "finished",
+				mIteration, mStartLatency.summary());
+	}
+
+	@Override
+	public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
+		if (mediaPlayer != mPlayer)
+			return true;
+
+		if (mRequestedNanos == 0) {
+			// Between iterations; the next one starts with a new player
+			Timber.w("Soak test: MediaPlayer error what = %d, extra = %d while idle", what, extra);
+			releasePlayer();
+			return true;
+		}
+
+		Timber.w("Soak iteration %d: MediaPlayer error what = %d, extra = %d", mIteration, what, extra);
+		appendCode(mErrors, what, extra);
+		endIteration(OUTCOME_ERROR);
+		// Handled, so onCompletion is not called as well
+		return true;
+	}
+
+	@Override
+	public boolean onInfo(MediaPlayer mediaPlayer, int what, int extra) {
+		if (mediaPlayer == mPlayer)
+			appendCode(mInfos, what, extra);
+		return false;
+	}
+
+	@Override
+	public void onCompletion(MediaPlayer mediaPlayer) {
+		if (mediaPlayer == mPlayer && mRequestedNanos != 0)
+			endIteration(OUTCOME_COMPLETED);
+	}
+
+	private void runIteration() {
+		if (!mRunning)
+			return;
+
+		if ((mMaxIterations > 0 && mIteration >= mMaxIterations)
+				|| (mMaxDurationMs > 0 && SystemClock.elapsedRealtime() - mStartRealtimeMs >= mMaxDurationMs)) {
+			finish();
+			return;
+		}
+
+		mIteration++;
+		mErrors.setLength(0);
+		mInfos.setLength(0);
+		mStartedNanos = 0;
+		mExpectedMs = 0;
+		mNewPlayer = mPlayer == null;
+		mRequestedNanos = System.nanoTime();
+
+		try {
+			if (mNewPlayer) {
+				AudioManager am = (AudioManager) mContext.getSystemService(Context.AUDIO_SERVICE);
+				// In prepared state when create is used
+				mPlayer = MediaPlayer.create(mContext, mSoundUri, null, mAttributes, am.generateAudioSessionId());
+				if (mPlayer == null) {
+					endIteration(OUTCOME_NOT_STARTED);
+					return;
+				}
+
+				mPlayer.setOnErrorListener(this);
+				mPlayer.setOnInfoListener(this);
+				mPlayer.setOnCompletionListener(this);
+			} else {
+				mPlayer.seekTo(0);
+			}
+
+			mExpectedMs = mPlayer.getDuration();
+			mPlayer.start();
+		} catch (IllegalStateException e) {
+			Timber.e(e, "Soak iteration %d: unable to start: %s", mIteration, e.getLocalizedMessage());
+			endIteration(OUTCOME_NOT_STARTED);
+			return;
+		}
+
+		mHandler.postDelayed(mPollStart, POLL_MS);
+	}
+
+	/**
+	 * Playback counts as started once the position moves, which is when output is actually rendered.
+	 */
+	private void pollStart() {
+		long nowNanos = System.nanoTime();
+		if (mPlayer.getCurrentPosition() > 0) {
+			mStartedNanos = nowNanos;
+			mStartLatency.record(nowNanos - mRequestedNanos);
+			mHandler.postDelayed(mStallCheck, Math.max(0, mExpectedMs) + STALL_GRACE_MS);
+			return;
+		}
+
+		if ((nowNanos - mRequestedNanos) / 1000000 >= START_TIMEOUT_MS) {
+			endIteration(OUTCOME_NOT_STARTED);
+			return;
+		}
+
+		mHandler.postDelayed(mPollStart, POLL_MS);
+	}
+
+	private void endIteration(int outcome) {
+		long nowNanos = System.nanoTime();
+		mHandler.removeCallbacks(mPollStart);
+		mHandler.removeCallbacks(mStallCheck);
+
+		// A clip shorter than the poll interval can complete before the position was seen to move
+		boolean started = mStartedNanos != 0 || outcome == OUTCOME_COMPLETED;
+		long latencyMs = mStartedNanos != 0 ? (mStartedNanos - mRequestedNanos) / 1000000 : -1;
+		long durationMs = mStartedNanos != 0 ? (nowNanos - mStartedNanos) / 1000000 : -1;
+
+		if (outcome == OUTCOME_COMPLETED && durationMs >= 0 && mExpectedMs > 0) {
+			long errorMs = Math.abs(durationMs - mExpectedMs);
+			mMaxDurationErrorMs = Math.max(mMaxDurationErrorMs, errorMs);
+			if (errorMs > DURATION_TOLERANCE_MS)
+				mDurationMismatches++;
+		}
+
+		mOutcomeCounts[outcome]++;
+		mRequestedNanos = 0;
+		if (outcome != OUTCOME_COMPLETED)
+			Timber.w("Soak iteration %d %s (started = %s)", mIteration, OUTCOME_NAMES[outcome], started);
+
+		writeLine(String.format(Locale.US, "%d,%.1f,%s,%d,%d,%d,%d,%s,%s\n", mIteration,
+				(SystemClock.elapsedRealtime() - mStartRealtimeMs) / 1000.0, OUTCOME_NAMES[outcome], mNewPlayer ? 1 : 0,
+				latencyMs, durationMs, mExpectedMs, mErrors, mInfos));
+		// Coalesced, so short intervals don't flood the notification manager
+		UserNotificationManager.getInstance().update(NOTIFICATION_TITLE, getStatus());
+
+		// A completed player is kept for the next iteration, which replays it like a looping alert
+		if (outcome != OUTCOME_COMPLETED)
+			releasePlayer();
+
+		if (mRunning)
+			mHandler.postDelayed(mNextIteration, mIntervalMs);
+	}
+
+	private void finish() {
+		if (!mRunning)
+			return;
+
+		mRunning = false;
+		mHandler.removeCallbacks(mNextIteration);
+		if (mRequestedNanos != 0)
+			endIteration(OUTCOME_CANCELLED);
+		releasePlayer();
+
+		String summary = summary();
+		Timber.i("Soak test finished:\n%s", summary);
+		UserNotificationManager.getInstance().update(NOTIFICATION_TITLE, getStatus());
+		try {
+			mReport.close();
+		} catch (IOException e) {
+			Timber.e(e, "Error closing soak report: %s", e.getLocalizedMessage());
+		}
+
+		File summaryFile = new File(mContext.getFilesDir(), mReportFile.getName().replace(".csv", "_summary.txt"));
+		try (Writer writer = new FileWriter(summaryFile)) {
+			writer.write(summary);
+		} catch (IOException e) {
+			Timber.e(e, "Error writing %s: %s", summaryFile, e.getLocalizedMessage());
+		}
+
+		mHandlerThread.quitSafely();
+	}
+
+	private String summary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.US, "Sound %s, %d iterations in %.1f min, report %s\n", mSoundUri, mIteration,
+				(SystemClock.elapsedRealtime() - mStartRealtimeMs) / 60000.0, mReportFile.getName()));
+		for (int outcome = 0; outcome < OUTCOME_NAMES.length; outcome++)
+			sb.append(String.format(Locale.US, "%s: %d\n", OUTCOME_NAMES[outcome], mOutcomeCounts[outcome]));
+		sb.append(String.format(Locale.US, "Duration off by more than %d ms: %d (max %d ms)\n", DURATION_TOLERANCE_MS,
+				mDurationMismatches, mMaxDurationErrorMs));
+		sb.append(mStartLatency.summary()).append('\n');
+		return sb.toString();
+	}
+
+	private void writeLine(String line) {
+		try {
+			mReport.write(line);
+			// Flushed per iteration so a crash loses at most the iteration in progress
+			mReport.flush();
+		} catch (IOException e) {
+			Timber.e(e, "Error writing soak report: %s", e.getLocalizedMessage());
+		}
+	}
+
+	private void releasePlayer() {
+		if (mPlayer == null)
+			return;
+
+		mPlayer.release();
+		mPlayer = null;
+	}
+
+	private static void appendCode(StringBuilder codes, int what, int extra) {
+		if (codes.length() > 0)
+			codes.append(';');
+		codes.append(what).append(':').append(extra);
+	}
+}
@@ -0,0 +1,168 @@
+package io.atlaslabs.audiotestapp;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.net.Uri;
+import android.os.Build;
+import android.util.SparseBooleanArray;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.concurrent.TimeUnit;
+
+import io.atlaslabs.audiotestapp.core.AlertLoopPlayer;
+import io.atlaslabs.audiotestapp.core.SoundSettings;
+import io.atlaslabs.audiotestapp.util.Utils;
+import timber.log.Timber;
+
+/**
+ * Plays the alert through a {@link SoundPool}. Clips are loaded once, by warm-up or the first start, and played
+ * from the pool's decoded copy, so a retrigger is a single call into the mixer instead of the
+ * Ringtone binder round trips. Looping with an interval is driven by {@link AlertLoopPlayer}.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public class SoundPoolAlertPlayer extends AlertLoopPlayer {
+	private final PoolOutput mOutput;
+
+	public SoundPoolAlertPlayer(Context context) {
+		this(new PoolOutput(context));
+	}
+
+	private SoundPoolAlertPlayer(PoolOutput output) {
+		super(output);
+		mOutput = output;
+	}
+
+	public void release() {
+		stopSound();
+		mOutput.mSoundPool.release();
+	}
+
+	private static final class PoolOutput implements AlertLoopPlayer.Output {
+		private static final int AUDIO_RESOURCE_ID = R.raw.woopwoop;
+		private static final int MAX_STREAMS = 2;
+		private static final int STREAM_PRIORITY = 1;
+		private static final int NO_STREAM = 0;
+		private static final int NO_SOUND = 0;
+
+		private final Context mContext;
+		private final SoundPool mSoundPool;
+		private final AudioPolicyTransaction mPolicyTransaction;
+		// Sound IDs whose load has completed
+		private final SparseBooleanArray mLoadedSounds = new SparseBooleanArray();
+		private int mAlertSoundId = NO_SOUND;
+		private volatile long mAlertDurationNanos = 0;
+		// Normalizes the clip's loudness, so the requested volume means the same for every sound
+		private float mGain = 1.0f;
+
+		private int mStreamId = NO_STREAM;
+		private float mVolume;
+		private boolean mStartPending = false;
+
+		PoolOutput(Context context) {
+			mContext = context.getApplicationContext();
+			mPolicyTransaction = new AudioPolicyTransaction(mContext, AudioManager.STREAM_ALARM);
+			AudioAttributes attributes = new AudioAttributes.Builder()
+					.setUsage(AudioAttributes.USAGE_ALARM)
+					.setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+					.build();
+
+			mSoundPool = new SoundPool.Builder()
+					.setMaxStreams(MAX_STREAMS)
+					.setAudioAttributes(attributes)
+					.build();
+			mSoundPool.setOnLoadCompleteListener(this::onLoadComplete);
+		}
+
+		@Override
+		public synchronized void prepare() {
+			if (mAlertSoundId != NO_SOUND)
+				return;
+
+			Uri alertUri = PcmAlertCache.getResourceUri(mContext, AUDIO_RESOURCE_ID);
+			mAlertDurationNanos = TimeUnit.MILLISECONDS.toNanos(Utils.getMediaDurationMs(mContext, alertUri));
+			mGain = LoudnessCache.getInstance().getGain(alertUri);
+			mAlertSoundId = mSoundPool.load(mContext, AUDIO_RESOURCE_ID, 1);
+			mSoundPool.load(mContext, R.raw.chime, 1);
+		}
+
+		@Override
+		public synchronized boolean start(SoundSettings settings) {
+			prepare();
+			stopStream();
+			// The default volume leaves the device volume alone
+			mVolume = mGain;
+			if (settings.getVolume() != settings.getDefaultVolume())
+				mVolume *= mPolicyTransaction.applyVolumeFraction(settings.getVolume());
+
+			// Played from onLoadComplete() once the clip is ready; the loop schedule still starts now
+			if (!mLoadedSounds.get(mAlertSoundId)) {
+				Timber.w("Alert sound %d not loaded yet; deferring start", mAlertSoundId);
+				mStartPending = true;
+				return true;
+			}
+
+			return play();
+		}
+
+		@Override
+		public synchronized void replay() {
+			stopStream();
+			play();
+		}
+
+		@Override
+		public boolean isPlaying() {
+			// SoundPool can't report stream state; the clip duration is authoritative
+			return false;
+		}
+
+		@Override
+		public synchronized void stop() {
+			mStartPending = false;
+			stopStream();
+			// Only does anything if start() had to fall back to the stream volume
+			mPolicyTransaction.rollback();
+		}
+
+		@Override
+		public long getClipDurationNanos() {
+			return mAlertDurationNanos;
+		}
+
+		private synchronized void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+			if (status != 0) {
+				Timber.e("SoundPool failed to load sound %d (status %d)", sampleId, status);
+				return;
+			}
+
+			Timber.d("SoundPool loaded sound %d", sampleId);
+			mLoadedSounds.put(sampleId, true);
+
+			if (sampleId == mAlertSoundId && mStartPending) {
+				mStartPending = false;
+				play();
+			}
+		}
+
+		private boolean play() {
+			// Per-stream volume; the system stream volume is left alone
+			mStreamId = mSoundPool.play(mAlertSoundId, mVolume, mVolume, STREAM_PRIORITY, 0, 1.0f);
+			if (mStreamId == NO_STREAM) {
+				Timber.e("SoundPool failed to play sound %d", mAlertSoundId);
+				return false;
+			}
+
+			return true;
+		}
+
+		private void stopStream() {
+			if (mStreamId != NO_STREAM) {
+				mSoundPool.stop(mStreamId);
+				mStreamId = NO_STREAM;
+			}
+		}
+	}
+}
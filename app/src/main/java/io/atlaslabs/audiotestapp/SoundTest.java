@@ -4,36 +4,52 @@ import android.app.Application;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.media.AudioAttributes;
-import android.media.AudioDeviceInfo;
 import android.media.AudioManager;
-import android.media.AudioPlaybackConfiguration;
-import android.media.AudioRouting;
 import android.media.MediaPlayer;
 import android.media.Ringtone;
-import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Build;
 
 import androidx.annotation.RequiresApi;
 
-import java.util.List;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
 
+import io.atlaslabs.audiotestapp.core.DiagnosticsRecorder;
+import io.atlaslabs.audiotestapp.core.LatencyHistogram;
 import io.atlaslabs.audiotestapp.util.Utils;
+import io.reactivex.Completable;
+import io.reactivex.schedulers.Schedulers;
 import timber.log.Timber;
 
 public class SoundTest implements MediaPlayer.OnErrorListener, MediaPlayer.OnPreparedListener,
 		MediaPlayer.OnInfoListener, MediaPlayer.OnCompletionListener {
-	@RequiresApi(Build.VERSION_CODES.O)
-	private static final AudioRouting.OnRoutingChangedListener mRoutingListener = audioRouting -> Timber.i("Audio routing change: %s", audioRouting);
 	private static final int mDelayMilliSec = 10000;
+	private static final int mPollMilliSec = 500;
+	private static final int DIAGNOSTICS_CAPACITY = 512;
+	private static final String DIAGNOSTICS_FILE = "soundtest_diagnostics.csv";
+	// Column order of the values in each diagnostics sample
+	private static final String[] DIAGNOSTICS_COLUMNS = {"usage", "content_type", "flags", "stream_type", "mode",
+			"ringer_mode", "stream_muted", "music_active", "playing", "thread_priority"};
+	// Only bounds the background teardown; stop() itself never waits
+	private static final int TEARDOWN_TIMEOUT_MS = 5000;
 	private static SoundTest mInstance = null;
-	private static volatile boolean mSoundLoop = true;
 	private final Context mContext;
 	private final Uri mSoundUri;
-	private Thread mPlaybackThread = null;
+	private final DiagnosticsRecorder mDiagnostics;
+	private final LatencyHistogram mStopLatency = new LatencyHistogram("SoundTest stop (caller)");
+	// The playback thread exits once it is no longer the current one
+	private volatile Thread mPlaybackThread = null;
+	private Thread mStoppingThread = null;
+	private volatile RingtoneCache.Lease mLease = null;
 
 	private SoundTest(Application app) {
 		mContext = app;
+		long sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(app.getString(R.string.DIAGNOSTICS_SAMPLE_INTERVAL_MS)));
+		mDiagnostics = new DiagnosticsRecorder(DIAGNOSTICS_CAPACITY, sampleIntervalNanos, DIAGNOSTICS_COLUMNS);
 		String uriPrefix = ContentResolver.SCHEME_ANDROID_RESOURCE + "://" + app.getPackageName() + "/";
 		mSoundUri = Uri.parse(uriPrefix + R.raw.woopwoop);
 	}
@@ -46,35 +62,95 @@ public class SoundTest implements MediaPlayer.OnErrorListener, MediaPlayer.OnPre
 	}
 
 	public static SoundTest getInstance() {
+		Startup.require(Startup.SOUND_TEST);
 		return mInstance;
 	}
 
-	public void play() {
-		mSoundLoop = true;
-
+	public synchronized void play() {
 		if (!Utils.isAtLeastO() || mPlaybackThread != null)
 			return;
 
-		mPlaybackThread = getPlaybackThread("SoundTest Playback");
+		// Waits for a thread still tearing down, so its cleanup can't clear the new thread's ringtone
+		mPlaybackThread = getPlaybackThread("SoundTest Playback", mStoppingThread);
 		mPlaybackThread.start();
 	}
 
-	public void stop() {
-		mSoundLoop = false;
+	/**
+	 * Stops playback without blocking the caller: the ringtone is silenced and the playback thread
+	 * interrupted out of any sleep on the caller's thread, and the thread is joined in the background.
+	 *
+	 * @return completes once the playback thread has exited; teardown runs whether or not it is subscribed to
+	 */
+	public Completable stop() {
+		long startNanos = System.nanoTime();
+		Thread thread;
+		synchronized (this) {
+			thread = mPlaybackThread;
+			mPlaybackThread = null;
+			if (thread != null)
+				mStoppingThread = thread;
+		}
 
-		if (mPlaybackThread != null && mPlaybackThread.isAlive()) {
-			try {
-				mPlaybackThread.join(30000);
-			} catch (InterruptedException ignored) {
-			}
+		if (thread == null)
+			return Completable.complete();
+
+		RingtoneCache.Lease lease = mLease;
+		if (lease != null)
+			lease.stop();
+		thread.interrupt();
+
+		long callerNanos = System.nanoTime() - startNanos;
+		mStopLatency.record(callerNanos);
+
+		Completable teardown = Completable.fromAction(() -> {
+			thread.join(TEARDOWN_TIMEOUT_MS);
+			if (thread.isAlive())
+				Timber.w("SoundTest playback thread still running %d ms after stop", TEARDOWN_TIMEOUT_MS);
+		})
+				.subscribeOn(Schedulers.io())
+				.doOnComplete(() -> Timber.d("SoundTest stopped: %d us on caller, torn down after %d ms",
+						callerNanos / 1000, (System.nanoTime() - startNanos) / 1000000))
+				.cache();
+
+		teardown.subscribe(() -> { },
+				throwable -> Timber.e(throwable, "Error stopping SoundTest: %s", throwable.getLocalizedMessage()));
+		return teardown;
+	}
 
-			mPlaybackThread = null;
+	/**
+	 * Formats the recorded playback diagnostics to the log and to a CSV file in the app's files directory.
+	 */
+	public void dumpDiagnostics() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			mDiagnostics.dump(sb);
+		} catch (IOException ignored) {
+			// StringBuilder does not throw
+		}
+
+		Timber.i("SoundTest diagnostics (%d samples, %d overwritten), %s:\n%s", mDiagnostics.size(),
+				mDiagnostics.getOverwrittenCount(), mStopLatency.summary(), sb);
+
+		File file = new File(mContext.getFilesDir(), DIAGNOSTICS_FILE);
+		try (Writer writer = new FileWriter(file)) {
+			writer.append(sb);
+		} catch (IOException e) {
+			Timber.e(e, "Error writing %s: %s", file, e.getLocalizedMessage());
 		}
 	}
 
 	@RequiresApi(Build.VERSION_CODES.O)
-	private Thread getPlaybackThread(String threadName) {
+	private Thread getPlaybackThread(String threadName, Thread previousThread) {
 		Thread playAudio = new Thread(() -> {
+			Thread self = Thread.currentThread();
+			if (previousThread != null) {
+				try {
+					previousThread.join();
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+
 			AudioManager am = (AudioManager) mContext.getSystemService(Context.AUDIO_SERVICE);
 
 			AudioAttributes attrib = new AudioAttributes.Builder()
@@ -84,87 +160,66 @@ public class SoundTest implements MediaPlayer.OnErrorListener, MediaPlayer.OnPre
 					.build();
 
 			int streamType = attrib.getVolumeControlStream();
-			Ringtone ringtone = RingtoneManager.getRingtone(mContext, mSoundUri);
-			ringtone.setStreamType(RingtoneManager.TYPE_ALARM);
-
-			AudioAttributes existingAttribs = ringtone.getAudioAttributes();
-
-			Timber.i("AudioAttributes (existing): vcs = %d, flags = %d, content = %d, usage = %d",
-					existingAttribs.getVolumeControlStream(),
-					existingAttribs.getFlags(), existingAttribs.getContentType(), existingAttribs.getUsage());
-			ringtone.setAudioAttributes(attrib);
+			RingtoneCache.Lease lease = RingtoneCache.getInstance().acquire(mSoundUri, attrib.getUsage(), attrib.getContentType());
+			if (lease == null) {
+				Timber.e("Unable to resolve ringtone %s", mSoundUri);
+				return;
+			}
+			Ringtone ringtone = lease.getRingtone();
 
-			Timber.i("AudioAttributes (new): vcs = %d", attrib.getVolumeControlStream());
-			int maxVolume = am.getStreamMaxVolume(streamType);
-			int currentVolume = am.getStreamVolume(streamType);
+			Timber.i("AudioAttributes: vcs = %d", attrib.getVolumeControlStream());
+			AudioPolicyState.Snapshot policy = AudioPolicyState.getInstance().get();
+			int maxVolume = policy.getStreamMaxVolume(streamType);
+			int currentVolume = policy.getStreamVolume(streamType);
 
 			Timber.i("Stream type %d volumes: current = %d, max = %d", streamType, currentVolume, maxVolume);
 			am.setStreamVolume(streamType, currentVolume, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
 
-			List<AudioPlaybackConfiguration> configs = am.getActivePlaybackConfigurations();
-
-			for (AudioPlaybackConfiguration c : configs) {
-				AudioAttributes attr = c.getAudioAttributes();
-				int vcs = attr.getVolumeControlStream();
-				Timber.i("AudioPlaybackConfiguration:\r\n" +
-								"\tAudioAttributes: vcs = %d, content = %d, usage = %d, flags = %d",
-						vcs, attr.getContentType(), attr.getUsage(), attr.getFlags()
-				);
+			Timber.i("AudioManager: mode = %d, ringer mode = %d, isStreamMute = %s",
+					am.getMode(), policy.getRingerMode(), am.isStreamMute(streamType));
 
-				Timber.i("Volumes for VCS %d:\r\n" +
-						"\tCurrent: %d\r\n" +
-						"\tMax: %d", vcs, am.getStreamVolume(vcs), am.getStreamMaxVolume(vcs));
-			}
+			// Outputs and active playbacks are kept current by callbacks; changes are logged as they happen
+			Timber.i("Audio outputs: %s", AudioRouteTracker.getInstance().get());
 
-			Timber.i("AudioManager:\r\n" +
-							"\tMode: %d\r\n" +
-							"\tRinger Mode: %d\r\n" +
-							"\tisStreamMute: %s\r\n"
-					, am.getMode(), am.getRingerMode(), am.isStreamMute(streamType));
-
-			AudioDeviceInfo[] devices = am.getDevices(AudioManager.GET_DEVICES_OUTPUTS);
-			for (AudioDeviceInfo d : devices) {
-				Timber.i("AudioDeviceInfo (ID %d): \r\n" +
-								"\tProduct Name: %s\r\n" +
-								"\tType: %d\r\n" +
-								"\tisSink: %s", d.getId(),
-						d.getProductName(), d.getType(), d.isSink());
-			}
+			int[] sample = new int[mDiagnostics.getColumnCount()];
+			Timber.i("Playing ringtone on thread \"%s\" (priority %d), sampling diagnostics", Thread.currentThread().getName(),
+					Thread.currentThread().getPriority());
 
-			do {
-				// On rockchip hardware, this only seems to work once
-				ringtone.play();
-
-				do {
-					AudioAttributes ringtoneAttribs = ringtone.getAudioAttributes();
-
-					Timber.i("Playing ringtone on thread \"%s\" (priority %d):\r\n" +
-									"\tusage = %d\r\n" +
-									"\tcontent type = %d\r\n" +
-									"\tflags = %d\r\n" +
-									"\tstream type = %d\r\n" +
-									"\tAudioManager mode: %d\r\n" +
-									"\tAudioManager ringer mode: %d\r\n" +
-									"\tisStreamMute (stream %d): %s\r\n" +
-									"\tisMusicActive: %s",
-							Thread.currentThread().getName(), Thread.currentThread().getPriority(),
-							ringtoneAttribs.getUsage(), ringtoneAttribs.getContentType(), ringtoneAttribs.getFlags(),
-							ringtone.getStreamType(), am.getMode(), am.getRingerMode(), streamType, am.isStreamMute(streamType),
-							am.isMusicActive());
-
-					try {
-						Thread.sleep(500);
-					} catch (InterruptedException ignore) {
-						break;
-					}
-				} while (ringtone.isPlaying());
+			mLease = lease;
+			try {
+				while (mPlaybackThread == self) {
+					// On rockchip hardware, this only seems to work once
+					ringtone.play();
+
+					do {
+						long nowNanos = System.nanoTime();
+						if (mDiagnostics.isSampleDue(nowNanos)) {
+							// Copied by the recorder; formatted only when dumped
+							AudioAttributes ringtoneAttribs = ringtone.getAudioAttributes();
+							sample[0] = ringtoneAttribs.getUsage();
+							sample[1] = ringtoneAttribs.getContentType();
+							sample[2] = ringtoneAttribs.getFlags();
+							sample[3] = ringtone.getStreamType();
+							sample[4] = am.getMode();
+							sample[5] = AudioPolicyState.getInstance().get().getRingerMode();
+							sample[6] = am.isStreamMute(streamType) ? 1 : 0;
+							sample[7] = am.isMusicActive() ? 1 : 0;
+							sample[8] = ringtone.isPlaying() ? 1 : 0;
+							sample[9] = Thread.currentThread().getPriority();
+							mDiagnostics.record(nowNanos, sample);
+						}
+
+						Thread.sleep(mPollMilliSec);
+					} while (ringtone.isPlaying());
 
-				try {
 					Thread.sleep(mDelayMilliSec);
-				} catch (InterruptedException ignore) {
-					break;
 				}
-			} while (mSoundLoop);
+			} catch (InterruptedException ignore) {
+				// Interrupted by stop(), which already silenced the ringtone
+			} finally {
+				mLease = null;
+				lease.release();
+			}
 
 			Timber.w("Ringtone no longer playing");
 		});
@@ -0,0 +1,213 @@
+package io.atlaslabs.audiotestapp;
+
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.reactivex.Completable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.schedulers.Schedulers;
+import timber.log.Timber;
+
+/**
+ * Lazy application startup. Subsystems are registered as named components with their dependencies
+ * and are created on first use, through {@link #require(String)} in their accessors, or in a
+ * background pass that starts once the main thread first goes idle, whichever comes first.
+ * Dependencies are always initialized first. Each initialization is recorded to a trace that
+ * {@link #dump()} formats.
+ * <p>
+ * {@link #require(String)} blocks: it runs the initialization inline, or waits for the deferred
+ * pass if that is initializing the component right now. On the main thread, only require
+ * components whose initialization and dependencies are cheap; reach anything else through
+ * {@link #whenInitialized(String)}.
+ */
+public final class Startup {
+	public static final String AUDIO_POLICY = "AudioPolicyState";
+	public static final String ROUTE_TRACKER = "AudioRouteTracker";
+	public static final String POLICY_RECOVERY = "AudioPolicyRecovery";
+	public static final String LOUDNESS_CACHE = "LoudnessCache";
+	public static final String PCM_DISK_CACHE = "PcmDiskCache";
+	public static final String ALERT_PLAYER = "AlertPlayer";
+	public static final String RINGTONE_CACHE = "RingtoneCache";
+	public static final String SOUND_TEST = "SoundTest";
+	public static final String AUDIO_SCHEDULER = "AudioScheduler";
+	public static final String MEDIA_PLAYER_POOL = "MediaPlayerPool";
+	public static final String NOTIFICATIONS = "UserNotificationManager";
+	public static final String AUDIO_WARMUP = "AudioWarmup";
+
+	private static Startup mInstance = null;
+	private final long mOriginNanos = SystemClock.elapsedRealtimeNanos();
+	// Registration order; dependencies must be registered before their dependents
+	private final Map<String, Component> mComponents = new LinkedHashMap<>();
+	private final List<TraceEntry> mTrace = new ArrayList<>();
+	private Disposable mDeferred = Disposables.disposed();
+
+	private Startup() {
+	}
+
+	/**
+	 * Creates the initializer. Call first thing in {@link App#onCreate()}, then register components.
+	 */
+	public static void setup() {
+		if (mInstance != null)
+			return;
+
+		mInstance = new Startup();
+	}
+
+	public static Startup getInstance() {
+		return mInstance;
+	}
+
+	/**
+	 * Initializes {@code name} and its dependencies on the calling thread unless that already
+	 * happened, waiting for another thread that is initializing them. Cheap once initialized;
+	 * until then, not for the main thread unless the component is cheap to initialize.
+	 */
+	public static void require(String name) {
+		if (mInstance != null)
+			mInstance.initialize(name, false);
+	}
+
+	/**
+	 * Completes, on a background thread, once {@code name} is initialized, initializing it there if
+	 * needed. For main-thread callers of components that are expensive to initialize.
+	 */
+	public static Completable whenInitialized(String name) {
+		return Completable.fromAction(() -> require(name))
+				.subscribeOn(Schedulers.io());
+	}
+
+	/**
+	 * @param dependencies components that must be initialized first; must already be registered
+	 */
+	public synchronized void register(String name, Runnable init, String... dependencies) {
+		for (String dependency : dependencies) {
+			if (!mComponents.containsKey(dependency))
+				throw new IllegalArgumentException(name + " depends on unregistered component " + dependency);
+		}
+
+		mComponents.put(name, new Component(dependencies, init));
+	}
+
+	public boolean isInitialized(String name) {
+		Component component = getComponent(name);
+		return component != null && component.mInitialized;
+	}
+
+	/**
+	 * Initializes every component not used yet on a background thread, once the calling (main)
+	 * thread's queue first goes idle so the first frame is not delayed.
+	 */
+	public void initializeDeferred() {
+		Looper.myQueue().addIdleHandler(() -> {
+			List<String> names;
+			synchronized (this) {
+				names = new ArrayList<>(mComponents.keySet());
+			}
+
+			mDeferred = Completable.fromAction(() -> {
+				for (String name : names)
+					initialize(name, true);
+			})
+					.subscribeOn(Schedulers.io())
+					.subscribe(() -> Timber.d("Deferred startup complete:\n%s", dump()),
+							throwable -> Timber.e(throwable, "Error in deferred startup: %s", throwable.getLocalizedMessage()));
+			return false;
+		});
+	}
+
+	public void cancelDeferred() {
+		mDeferred.dispose();
+	}
+
+	public synchronized String dump() {
+		StringBuilder sb = new StringBuilder();
+		long totalNanos = 0;
+
+		for (TraceEntry entry : mTrace) {
+			totalNanos += entry.mDurationNanos;
+			sb.append(String.format(Locale.US, "%-24s +%5d ms  %4d ms  %-9s %s\n", entry.mName,
+					entry.mStartNanos / 1000000, entry.mDurationNanos / 1000000,
+					entry.mDeferred ? "deferred" : "first use", entry.mThreadName));
+		}
+
+		sb.append(String.format(Locale.US, "%d of %d components initialized in %d ms", mTrace.size(),
+				mComponents.size(), totalNanos / 1000000));
+		return sb.toString();
+	}
+
+	private synchronized Component getComponent(String name) {
+		return mComponents.get(name);
+	}
+
+	private void initialize(String name, boolean deferred) {
+		Component component = getComponent(name);
+		if (component == null)
+			throw new IllegalArgumentException("Unknown startup component " + name);
+
+		if (component.mInitialized)
+			return;
+
+		synchronized (component) {
+			// Already initialized, or a getInstance() call from this component's own init
+			if (component.mInitialized || component.mRunning)
+				return;
+
+			component.mRunning = true;
+			try {
+				for (String dependency : component.mDependencies)
+					initialize(dependency, deferred);
+
+				long startNanos = SystemClock.elapsedRealtimeNanos();
+				component.mInit.run();
+				long durationNanos = SystemClock.elapsedRealtimeNanos() - startNanos;
+
+				synchronized (this) {
+					mTrace.add(new TraceEntry(name, startNanos - mOriginNanos, durationNanos, deferred,
+							Thread.currentThread().getName()));
+				}
+
+				Timber.v("Initialized %s in %d ms on \"%s\"", name, durationNanos / 1000000, Thread.currentThread().getName());
+				component.mInitialized = true;
+			} finally {
+				component.mRunning = false;
+			}
+		}
+	}
+
+	private static final class Component {
+		private final String[] mDependencies;
+		private final Runnable mInit;
+		private volatile boolean mInitialized = false;
+		// Only touched while holding the component's lock
+		private boolean mRunning = false;
+
+		Component(String[] dependencies, Runnable init) {
+			mDependencies = dependencies;
+			mInit = init;
+		}
+	}
+
+	private static final class TraceEntry {
+		private final String mName;
+		private final long mStartNanos;
+		private final long mDurationNanos;
+		private final boolean mDeferred;
+		private final String mThreadName;
+
+		TraceEntry(String name, long startNanos, long durationNanos, boolean deferred, String threadName) {
+			mName = name;
+			mStartNanos = startNanos;
+			mDurationNanos = durationNanos;
+			mDeferred = deferred;
+			mThreadName = threadName;
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package io.atlaslabs.audiotestapp;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+import io.atlaslabs.audiotestapp.core.AlertLoopPlayer;
+import io.atlaslabs.audiotestapp.core.PcmGain;
+import io.atlaslabs.audiotestapp.core.SoundSettings;
+import io.atlaslabs.audiotestapp.util.Utils;
+import timber.log.Timber;
+
+/**
+ * Plays the alert from the {@link PcmAlertCache} through an {@link AudioTrack} in
+ * {@link AudioTrack#MODE_STATIC}. The samples are written to the track once; every start and
+ * loop iteration only rewinds it, so there is no decode or prepare on the alert path.
+ * <p>
+ * The requested volume is applied as a gain on the samples, which are only rewritten when the
+ * volume changes, so the system stream volume, ringer mode and Do Not Disturb are left alone.
+ * Only when the alarm stream is muted does it fall back to raising the stream volume through an
+ * {@link AudioPolicyTransaction}.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public class StaticTrackAlertPlayer extends AlertLoopPlayer {
+	private static final int AUDIO_STREAM_TYPE = AudioManager.STREAM_ALARM;
+	// Name the alert track is tracked under by AudioRouteTracker
+	static final String ROUTE_NAME = "alert";
+
+	private final TrackOutput mOutput;
+
+	/**
+	 * Requires {@link PcmAlertCache#setup} to have been called.
+	 */
+	public StaticTrackAlertPlayer(Context context) {
+		this(new TrackOutput(context.getApplicationContext()));
+	}
+
+	private StaticTrackAlertPlayer(TrackOutput output) {
+		super(output);
+		mOutput = output;
+	}
+
+	public void release() {
+		stopSound();
+		mOutput.release();
+	}
+
+	private static final class TrackOutput implements AlertLoopPlayer.Output {
+		private final AudioPolicyTransaction mPolicyTransaction;
+		private AudioTrack mTrack = null;
+		private PcmClip mClip = null;
+		// Normalizes the clip's loudness, so the requested volume means the same for every sound
+		private float mGain = 1.0f;
+		// Clip samples scaled by the gain last written to the track; allocated on the first change
+		private short[] mScaled = null;
+		private float mWrittenGain = 1.0f;
+
+		TrackOutput(Context context) {
+			mPolicyTransaction = new AudioPolicyTransaction(context, AUDIO_STREAM_TYPE);
+		}
+
+		@Override
+		public synchronized void prepare() {
+			getTrack();
+		}
+
+		@Override
+		public synchronized boolean start(SoundSettings settings) {
+			AudioTrack track = getTrack();
+			if (track == null)
+				return false;
+
+			// The default volume leaves the device volume alone
+			float gain = mGain;
+			if (settings.getVolume() != settings.getDefaultVolume())
+				gain *= mPolicyTransaction.applyVolumeFraction(settings.getVolume());
+
+			stopIfPlaying(track);
+			if (!writeGain(track, gain))
+				return false;
+
+			rewindAndPlay(track);
+			return true;
+		}
+
+		@Override
+		public synchronized void replay() {
+			if (mTrack != null)
+				rewindAndPlay(mTrack);
+		}
+
+		@Override
+		public synchronized boolean isPlaying() {
+			return mTrack != null && mTrack.getPlayState() == AudioTrack.PLAYSTATE_PLAYING
+					&& mTrack.getPlaybackHeadPosition() < mClip.getFrameCount();
+		}
+
+		@Override
+		public synchronized void stop() {
+			if (mTrack != null)
+				stopIfPlaying(mTrack);
+
+			// Only does anything if start() had to fall back to the stream volume
+			mPolicyTransaction.rollback();
+		}
+
+		@Override
+		public synchronized long getClipDurationNanos() {
+			return mClip != null ? mClip.getDurationNanos() : 0;
+		}
+
+		synchronized void release() {
+			if (mTrack != null) {
+				if (Utils.isAtLeastN() && AudioRouteTracker.getInstance() != null)
+					AudioRouteTracker.getInstance().untrack(ROUTE_NAME);
+				mTrack.release();
+				mTrack = null;
+			}
+		}
+
+		private void rewindAndPlay(AudioTrack track) {
+			stopIfPlaying(track);
+
+			// Rewinds to the start of the static buffer without copying the samples again
+			track.reloadStaticData();
+			track.play();
+		}
+
+		private static void stopIfPlaying(AudioTrack track) {
+			if (track.getPlayState() != AudioTrack.PLAYSTATE_STOPPED)
+				track.stop();
+		}
+
+		/**
+		 * Rewrites the static buffer scaled by {@code gain} unless that gain is already written.
+		 * The track must be stopped.
+		 */
+		private boolean writeGain(AudioTrack track, float gain) {
+			if (gain == mWrittenGain)
+				return true;
+
+			int sampleCount = mClip.getSizeInBytes() / PcmClip.BYTES_PER_SAMPLE;
+			if (mScaled == null)
+				mScaled = new short[sampleCount];
+
+			mClip.getData().asShortBuffer().get(mScaled);
+			if (!PcmGain.isUnity(gain))
+				PcmGain.apply(mScaled, 0, mScaled, 0, sampleCount, gain);
+
+			// Static tracks always write from the start of the buffer
+			int written = track.write(mScaled, 0, sampleCount);
+			if (written != sampleCount) {
+				Timber.e("Unable to write alert samples at gain %.2f (wrote %d of %d)", gain, written, sampleCount);
+				mWrittenGain = Float.NaN;
+				return false;
+			}
+
+			mWrittenGain = gain;
+			return true;
+		}
+
+		private AudioTrack getTrack() {
+			if (mTrack != null)
+				return mTrack;
+
+			mClip = PcmAlertCache.getInstance().getAlertClip();
+			if (mClip == null)
+				return null;
+
+			mGain = LoudnessCache.getInstance().getGain(mClip);
+
+			AudioAttributes attributes = new AudioAttributes.Builder()
+					.setUsage(AudioAttributes.USAGE_ALARM)
+					.setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+					.build();
+
+			AudioFormat format = new AudioFormat.Builder()
+					.setSampleRate(mClip.getSampleRate())
+					.setChannelMask(mClip.getChannelMask())
+					.setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+					.build();
+
+			AudioTrack track = new AudioTrack(attributes, format, mClip.getSizeInBytes(), AudioTrack.MODE_STATIC,
+					AudioManager.AUDIO_SESSION_ID_GENERATE);
+
+			int written = track.write(mClip.getData(), mClip.getSizeInBytes(), AudioTrack.WRITE_BLOCKING);
+			if (track.getState() != AudioTrack.STATE_INITIALIZED || written != mClip.getSizeInBytes()) {
+				Timber.e("Unable to load static AudioTrack (state %d, wrote %d of %d bytes)", track.getState(),
+						written, mClip.getSizeInBytes());
+				track.release();
+				return null;
+			}
+
+			// Route changes of the alert track are logged and readable from the tracker's snapshot
+			if (Utils.isAtLeastN() && AudioRouteTracker.getInstance() != null)
+				AudioRouteTracker.getInstance().track(ROUTE_NAME, track);
+
+			mTrack = track;
+			mWrittenGain = 1.0f;
+			return mTrack;
+		}
+	}
+}
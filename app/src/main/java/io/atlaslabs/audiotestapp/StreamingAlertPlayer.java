@@ -0,0 +1,266 @@
+package io.atlaslabs.audiotestapp;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTimestamp;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.Process;
+
+import androidx.annotation.RequiresApi;
+
+import io.atlaslabs.audiotestapp.core.AlertMetrics;
+import io.atlaslabs.audiotestapp.core.IAlertPlayer;
+import io.atlaslabs.audiotestapp.core.LoopRenderer;
+import io.atlaslabs.audiotestapp.core.SoundSettings;
+import timber.log.Timber;
+
+/**
+ * Plays the alert through one streaming {@link AudioTrack} that stays open while looping. A
+ * {@link LoopRenderer} writes the clip followed by the interval as silence straight into the
+ * stream, so repetitions are sample-accurate and cost nothing to start, unlike players that
+ * restart output for every iteration.
+ * <p>
+ * When each clip actually started is read back from the track's timestamps. The difference from
+ * its nominal start, one exact period after the previous one, is recorded as loop jitter, so
+ * underruns or a drifting output clock show up in the metrics.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public class StreamingAlertPlayer implements IAlertPlayer {
+	private static final int AUDIO_STREAM_TYPE = AudioManager.STREAM_ALARM;
+	// Frames per write; small enough that a stop leaves little queued, large enough to avoid wake-ups
+	private static final int RENDER_FRAMES = 1024;
+
+	private final Object mLock = new Object();
+	private final AlertMetrics mMetrics = new AlertMetrics();
+	private final AudioPolicyTransaction mPolicyTransaction;
+	private final AudioTimestamp mTimestamp = new AudioTimestamp();
+
+	// Guarded by mLock
+	private AudioTrack mTrack = null;
+	private LoopRenderer mRenderer = null;
+	private Thread mRenderThread = null;
+	private float mGain = 1.0f;
+	private boolean mActive = false;
+	private boolean mReleased = false;
+	// Incremented by silence(); audio rendered for an older generation is stale
+	private long mGeneration = 0;
+	private long mPlayingGeneration = 0;
+
+	// Only touched on the render thread
+	private short[] mBuffer;
+	private long mNextClipStartFrame;
+	private long mFirstClipStartNanos;
+
+	/**
+	 * Requires {@link PcmAlertCache#setup} to have been called.
+	 */
+	public StreamingAlertPlayer(Context context) {
+		mPolicyTransaction = new AudioPolicyTransaction(context.getApplicationContext(), AUDIO_STREAM_TYPE);
+	}
+
+	@Override
+	public void prepare() {
+		synchronized (mLock) {
+			if (mTrack != null || mReleased)
+				return;
+
+			PcmClip clip = PcmAlertCache.getInstance().getAlertClip();
+			if (clip == null)
+				return;
+
+			short[] samples = new short[clip.getSizeInBytes() / PcmClip.BYTES_PER_SAMPLE];
+			clip.getData().asShortBuffer().get(samples);
+			mGain = LoudnessCache.getInstance().getGain(clip);
+
+			AudioAttributes attributes = new AudioAttributes.Builder()
+					.setUsage(AudioAttributes.USAGE_ALARM)
+					.setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+					.build();
+
+			AudioFormat format = new AudioFormat.Builder()
+					.setSampleRate(clip.getSampleRate())
+					.setChannelMask(clip.getChannelMask())
+					.setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+					.build();
+
+			int minBufferBytes = AudioTrack.getMinBufferSize(clip.getSampleRate(), clip.getChannelMask(),
+					AudioFormat.ENCODING_PCM_16BIT);
+			int bufferBytes = Math.max(minBufferBytes, RENDER_FRAMES * clip.getChannelCount() * PcmClip.BYTES_PER_SAMPLE * 2);
+
+			AudioTrack track = new AudioTrack(attributes, format, bufferBytes, AudioTrack.MODE_STREAM,
+					AudioManager.AUDIO_SESSION_ID_GENERATE);
+			if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+				Timber.e("Unable to open streaming AudioTrack (state %d)", track.getState());
+				track.release();
+				return;
+			}
+
+			mTrack = track;
+			mRenderer = new LoopRenderer(samples, clip.getChannelCount(), clip.getSampleRate());
+			mBuffer = new short[RENDER_FRAMES * clip.getChannelCount()];
+
+			mRenderThread = new Thread(this::renderLoop, "AlertRender");
+			mRenderThread.start();
+		}
+	}
+
+	@Override
+	public void startSound(SoundSettings soundSettings) {
+		long requestedNanos = System.nanoTime();
+		prepare();
+
+		synchronized (mLock) {
+			if (mTrack == null)
+				return;
+
+			silence();
+			if (!soundSettings.getIsEnabled() || soundSettings.getVolume() == 0)
+				return;
+
+			// The default volume leaves the device volume alone
+			float gain = mGain;
+			if (soundSettings.getVolume() != soundSettings.getDefaultVolume())
+				gain *= mPolicyTransaction.applyVolumeFraction(soundSettings.getVolume());
+
+			// The render thread starts the track once anything it wrote before this start is flushed
+			mRenderer.start(gain, soundSettings.getLooping(), soundSettings.getInterval());
+			mActive = true;
+			mLock.notifyAll();
+		}
+
+		mMetrics.recordStart(requestedNanos);
+	}
+
+	@Override
+	public void stopSound() {
+		long requestedNanos = System.nanoTime();
+		synchronized (mLock) {
+			if (mTrack != null)
+				silence();
+
+			// Under the lock, so a startSound() that follows keeps the policy it applies
+			mPolicyTransaction.rollback();
+		}
+
+		mMetrics.recordStop(requestedNanos);
+	}
+
+	@Override
+	public long getClipDurationNanos() {
+		synchronized (mLock) {
+			return mRenderer != null ? mRenderer.getClipDurationNanos() : 0;
+		}
+	}
+
+	@Override
+	public AlertMetrics getMetrics() {
+		return mMetrics;
+	}
+
+	public void release() {
+		stopSound();
+
+		synchronized (mLock) {
+			mReleased = true;
+			mLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Silences output at once and discards queued audio. Pausing is immediate; stopping also
+	 * releases a write blocked on the full buffer.
+	 */
+	private void silence() {
+		mActive = false;
+		mGeneration++;
+		if (mTrack.getPlayState() != AudioTrack.PLAYSTATE_STOPPED) {
+			mTrack.pause();
+			mTrack.stop();
+		}
+		mTrack.flush();
+	}
+
+	private void renderLoop() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+		AudioTrack track;
+
+		while (true) {
+			int frames;
+			long generation;
+			synchronized (mLock) {
+				while (!mActive && !mReleased) {
+					try {
+						mLock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				if (mReleased)
+					break;
+
+				track = mTrack;
+				generation = mGeneration;
+				if (mPlayingGeneration != generation) {
+					// A write that was in progress when the sound was silenced or restarted may have
+					// queued stale audio after silence() flushed; drop it before starting
+					track.flush();
+					track.play();
+					mPlayingGeneration = generation;
+					mNextClipStartFrame = 0;
+					mFirstClipStartNanos = 0;
+				}
+
+				frames = mRenderer.render(mBuffer, RENDER_FRAMES);
+				if (frames == 0) {
+					// One-shot ended; stop() plays out what is queued. Restore the policy like stopSound()
+					// does, under the lock so it can't undo the changes of a start that follows
+					long endedNanos = System.nanoTime();
+					mActive = false;
+					track.stop();
+					mPolicyTransaction.rollback();
+					mMetrics.recordStop(endedNanos);
+					continue;
+				}
+			}
+
+			// Blocks while the track's buffer is full; silence() releases it
+			track.write(mBuffer, 0, frames * mRenderer.getChannelCount());
+			recordClipStarts(track, generation);
+		}
+
+		synchronized (mLock) {
+			mTrack.release();
+			mTrack = null;
+		}
+	}
+
+	/**
+	 * Converts the frame position of each clip start written so far to time using the latest
+	 * output timestamp, and records how far it is from one exact period after the first.
+	 */
+	private void recordClipStarts(AudioTrack track, long generation) {
+		synchronized (mLock) {
+			if (!mActive || generation != mGeneration || !track.getTimestamp(mTimestamp))
+				return;
+
+			long periodFrames = mRenderer.getPeriodFrames();
+			long periodNanos = periodFrames * 1000000000L / mRenderer.getSampleRate();
+			// Clip starts are only measured once the timestamp has passed them
+			while (mNextClipStartFrame <= mTimestamp.framePosition && mNextClipStartFrame < mRenderer.getFramesRendered()) {
+				long startedNanos = mTimestamp.nanoTime
+						- (mTimestamp.framePosition - mNextClipStartFrame) * 1000000000L / mRenderer.getSampleRate();
+				long iteration = mNextClipStartFrame / periodFrames;
+				if (iteration == 0)
+					mFirstClipStartNanos = startedNanos;
+				else
+					mMetrics.recordLoopIteration(mFirstClipStartNanos + iteration * periodNanos, startedNanos);
+
+				mNextClipStartFrame += periodFrames;
+			}
+		}
+	}
+}
@@ -9,13 +9,8 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.media.AudioAttributes;
-import android.media.AudioDeviceInfo;
 import android.media.AudioManager;
-import android.media.AudioPlaybackConfiguration;
-import android.media.AudioRouting;
-import android.media.MediaPlayer;
 import android.media.Ringtone;
-import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Build;
 
@@ -23,14 +18,17 @@ import androidx.annotation.RequiresApi;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
 import androidx.core.content.ContextCompat;
+import androidx.core.util.Pair;
 
-import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import io.atlaslabs.audiotestapp.activities.MainActivity;
 import io.atlaslabs.audiotestapp.util.Utils;
+import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.observers.DisposableCompletableObserver;
 import io.reactivex.schedulers.Schedulers;
 import timber.log.Timber;
 
@@ -39,11 +37,21 @@ import timber.log.Timber;
  * - AudioManager - provides access to volume and ringer mode control
  * - MediaPlayer - controls playback of audio/video files and streams. Not thread safe - must
  * access player instances from within same thread. If registering callbacks, thread must have a looper.
+ * Media plays through the {@link MediaPlayerPool}, which confines its players to its own thread.
+ * Media and ringtone plays are requests to a {@link PlaybackPipeline}, which limits how many play at once.
+ * Ringtones are looked up on {@code Schedulers.io()}; only starting and stopping them runs on the
+ * {@link AudioScheduler} thread.
  */
-public class UserNotificationManager implements MediaPlayer.OnErrorListener,
-		MediaPlayer.OnInfoListener, MediaPlayer.OnCompletionListener {
+public class UserNotificationManager {
 	public static final int PERSISTENT_NOTIFICATION_ID = 1;
 	public static final String CHANNEL_ID = "io.atlaslabs.audiotestapp";
+	// Audio attributes of playMedia()
+	static final int MEDIA_USAGE = AudioAttributes.USAGE_NOTIFICATION_RINGTONE;
+	static final int MEDIA_CONTENT_TYPE = AudioAttributes.CONTENT_TYPE_UNKNOWN;
+	// Ringtone has no completion callback, so a playing ringtone is polled to learn when its slot frees
+	private static final long RINGTONE_POLL_MS = 100;
+	// The remote player may not report playing yet right after play(); not seen playing by then, it never started
+	private static final long RINGTONE_START_GRACE_MS = 1000;
 
 	private static UserNotificationManager mInstance = null;
 	private final String mUriPrefix;
@@ -51,8 +59,8 @@ public class UserNotificationManager implements MediaPlayer.OnErrorListener,
 	private final Context mContext;
 	private final NotificationChannel mNotificationChannel;
 	private final NotificationManagerCompat mNotificationManager;
-
-	private Notification mPersistentNotification = null;
+	private final NotificationUpdater mNotificationUpdater;
+	private final PlaybackPipeline mPlayback;
 
 	private final CompositeDisposable mDisposables = new CompositeDisposable();
 
@@ -66,11 +74,12 @@ public class UserNotificationManager implements MediaPlayer.OnErrorListener,
 		mNotificationManager = NotificationManagerCompat.from(mContext);
 
 		mNotificationChannel = Utils.isAtLeastO() ? createNotificationChannel(mContext, mNotificationManager) : null;
+		mNotificationUpdater = new NotificationUpdater(mNotificationManager, buildNotification(), PERSISTENT_NOTIFICATION_ID,
+				Long.parseLong(appContext.getString(R.string.NOTIFICATION_UPDATE_INTERVAL_MS)));
+		mPlayback = new PlaybackPipeline(Integer.parseInt(appContext.getString(R.string.PLAYBACK_MAX_CONCURRENT)),
+				appContext.getString(R.string.PLAYBACK_OVERFLOW));
 	}
 
-	@RequiresApi(Build.VERSION_CODES.O)
-	private static final AudioRouting.OnRoutingChangedListener mRoutingListener = audioRouting -> Timber.i("Audio routing change: %s", audioRouting);
-
 	public static void setup(Application app) {
 		if (mInstance != null)
 			return;
@@ -79,29 +88,13 @@ public class UserNotificationManager implements MediaPlayer.OnErrorListener,
 	}
 
 	public static UserNotificationManager getInstance() {
+		Startup.require(Startup.NOTIFICATIONS);
 		return mInstance;
 	}
 
 	public void cleanup() {
 		mDisposables.dispose();
-	}
-
-	@Override
-	public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
-		Timber.e("Media player error: what=%d, extra=%d", what, extra);
-		return false;
-	}
-
-	@Override
-	public boolean onInfo(MediaPlayer mediaPlayer, int what, int extra) {
-		Timber.w("Media player info: what(type)=%d, extra=%d", what, extra);
-		return false;
-	}
-
-	@Override
-	public void onCompletion(MediaPlayer mediaPlayer) {
-		Timber.d("MediaPlayer session ID %d completed. Releasing mediaPlayer", mediaPlayer.getAudioSessionId());
-		mediaPlayer.release();
+		mPlayback.dispose();
 	}
 
 	@RequiresApi(Build.VERSION_CODES.O)
@@ -111,21 +104,16 @@ public class UserNotificationManager implements MediaPlayer.OnErrorListener,
 			int sessionId = am.generateAudioSessionId();
 			int streamType = AudioManager.STREAM_ALARM;
 
-			AudioAttributes attrib = new AudioAttributes.Builder()
-					.setUsage(AudioAttributes.USAGE_ALARM)
-					//.setUsage(AudioAttributes.USAGE_NOTIFICATION_RINGTONE)
-					.setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-					.build();
-
-			Ringtone ringtone = RingtoneManager.getRingtone(mContext, Uri.parse(mUriPrefix + R.raw.woopwoop));
-
-			AudioAttributes existingAttribs = ringtone.getAudioAttributes();
+			// Attributes are applied once when the ringtone is first cached
+			RingtoneCache.Lease lease = RingtoneCache.getInstance().acquire(Uri.parse(mUriPrefix + R.raw.woopwoop),
+					AudioAttributes.USAGE_ALARM, AudioAttributes.CONTENT_TYPE_SONIFICATION);
+			if (lease == null)
+				throw new IllegalStateException("Unable to resolve alert ringtone");
+			Ringtone ringtone = lease.getRingtone();
 
-			Timber.d("Existing attribs: vcs = %d, flags = %d, content = %d, usage = %d", existingAttribs.getVolumeControlStream(),
-					existingAttribs.getFlags(),	existingAttribs.getContentType(), existingAttribs.getUsage());
-			ringtone.setAudioAttributes(attrib);
-
-			Timber.d("Attribs: vcs = %d", attrib.getVolumeControlStream());
+			AudioAttributes attrib = ringtone.getAudioAttributes();
+			Timber.d("Attribs: vcs = %d, flags = %d, content = %d, usage = %d", attrib.getVolumeControlStream(),
+					attrib.getFlags(), attrib.getContentType(), attrib.getUsage());
 			int maxVolume = am.getStreamMaxVolume(streamType);
 			int currentVolume = am.getStreamVolume(streamType);
 
@@ -133,10 +121,32 @@ public class UserNotificationManager implements MediaPlayer.OnErrorListener,
 			am.setStreamVolume(streamType, currentVolume, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
 
 			Timber.d("Ringtone: stream type = %d", ringtone.getStreamType());
-			// ringtone.setLooping(true);
-			ringtone.play();
-
-			return sessionId;
+			return Pair.create(lease, sessionId);
+				})
+				// The lookup and volume calls block; only the play runs on the audio thread
+				.subscribeOn(Schedulers.io())
+				.observeOn(AudioScheduler.getInstance())
+				.map(leased -> {
+					RingtoneCache.Lease lease = leased.first;
+					// ringtone.setLooping(true);
+					lease.getRingtone().play();
+					// Returned to the cache once played out, and dropped from mDisposables again then
+					DisposableCompletableObserver release = new DisposableCompletableObserver() {
+						@Override
+						public void onComplete() {
+							mDisposables.delete(this);
+							lease.release();
+						}
+
+						@Override
+						public void onError(Throwable e) {
+							onComplete();
+						}
+					};
+					mDisposables.add(release);
+					untilStopped(lease.getRingtone()).subscribe(release);
+
+					return leased.second;
 				});
 	}
 
@@ -147,36 +157,9 @@ public class UserNotificationManager implements MediaPlayer.OnErrorListener,
 			soundUri = mSoundUri;
 		}
 
-		Uri finalSoundUri = soundUri;
-		mDisposables.add(Observable.fromCallable(() -> {
-			AudioManager am = (AudioManager) mContext.getSystemService(Context.AUDIO_SERVICE);
-			int sessionId = am.generateAudioSessionId();
-
-			AudioAttributes attrib = new AudioAttributes.Builder()
-					.setUsage(AudioAttributes.USAGE_NOTIFICATION_RINGTONE)
-					.build();
-
-			// In prepared state when create is used
-			MediaPlayer mp = MediaPlayer.create(mContext, R.raw.chime, attrib, sessionId);
-			mp.setOnErrorListener(this);
-			mp.setOnCompletionListener(this);
-
-			Timber.i("Media %s: usage=%d, vcs=%d, flags=%d, contentType=%d", finalSoundUri,
-					attrib.getUsage(), attrib.getVolumeControlStream(), attrib.getFlags(), attrib.getContentType());
-			mp.start();
-			List<AudioPlaybackConfiguration> configs = am.getActivePlaybackConfigurations();
-			Timber.i("AudioManager: ringermode=%d, mode=%d", am.getRingerMode(), am.getMode());
-
-			// Timber.i("Volumes: ", am.getStreamVolume(), am.getStreamMinVolume());
-
-			return sessionId;
-		})
-				.subscribeOn(Schedulers.io())
-				.observeOn(AndroidSchedulers.mainThread())
-				.subscribe(result -> { },
-						throwable -> Timber.e(throwable, "Error playing media: %s", throwable.getLocalizedMessage()),
-						() -> { }));
-
+		// A pool checkout; only the first play of a sound prepares a player. Holds its slot until played out
+		mPlayback.submit("media " + soundUri,
+				MediaPlayerPool.getInstance().playToCompletion(soundUri, MEDIA_USAGE, MEDIA_CONTENT_TYPE));
 	}
 
 	public void playRingtone(Uri soundUri) {
@@ -185,61 +168,122 @@ public class UserNotificationManager implements MediaPlayer.OnErrorListener,
 			soundUri = mSoundUri;
 		}
 
-		try {
-			Ringtone ringtone = RingtoneManager.getRingtone(mContext, soundUri);
-			if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-				AudioAttributes attrib = ringtone.getAudioAttributes();
-				Utils.showToast(mContext, "Default ringtone %s: usage=%d, vcs=%d, flags=%d, contentType=%d", soundUri,
-						attrib.getUsage(), attrib.getVolumeControlStream(), attrib.getFlags(), attrib.getContentType());
-
-				attrib = new AudioAttributes.Builder()
-						.setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-						.setUsage(AudioAttributes.USAGE_NOTIFICATION_RINGTONE)
-						.build();
-
-				ringtone.setAudioAttributes(attrib);
-
-				Utils.showToast(mContext, "New ringtone %s: usage=%d, vcs=%d, flags=%d, contentType=%d", soundUri,
-						attrib.getUsage(), attrib.getVolumeControlStream(), attrib.getFlags(), attrib.getContentType());
-			} else {
-				Utils.showToast(mContext, "Playing ringtone %s", ringtone);
-			}
-
-			ringtone.play();
-			Utils.showToast(mContext, "Is Playing: %s", ringtone.isPlaying());
-		} catch (Exception ex) {
-			Utils.showToast(mContext, "Error playing ringtone Uri %s: %s", soundUri, ex.getLocalizedMessage());
-		}
+		mPlayback.submit("ringtone " + soundUri, ringtonePlayback(soundUri));
+	}
+
+	public String dumpPlayback() {
+		return mPlayback.dump();
+	}
+
+	/**
+	 * Plays a ringtone, completing once it has stopped; disposing stops it. The ringtone is looked
+	 * up on the I/O scheduler and started and stopped on the audio thread.
+	 */
+	private Completable ringtonePlayback(Uri soundUri) {
+		return Completable.using(() -> {
+					// Repeated plays of the same picked sound reuse the prepared ringtone
+					RingtoneCache.Lease lease = RingtoneCache.getInstance().acquire(soundUri,
+							AudioAttributes.USAGE_NOTIFICATION_RINGTONE, AudioAttributes.CONTENT_TYPE_SONIFICATION);
+					if (lease == null)
+						throw new IllegalArgumentException("Unable to resolve ringtone Uri " + soundUri);
+
+					Ringtone ringtone = lease.getRingtone();
+					if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+						AudioAttributes attrib = ringtone.getAudioAttributes();
+						toast("Ringtone %s: usage=%d, vcs=%d, flags=%d, contentType=%d", soundUri,
+								attrib.getUsage(), attrib.getVolumeControlStream(), attrib.getFlags(), attrib.getContentType());
+					} else {
+						toast("Playing ringtone %s", ringtone);
+					}
+					return lease;
+				},
+				lease -> Completable.fromAction(() -> {
+							lease.getRingtone().play();
+							toast("Is Playing: %s", lease.getRingtone().isPlaying());
+						})
+						.subscribeOn(AudioScheduler.getInstance())
+						.andThen(untilStopped(lease.getRingtone())),
+				// Stops the ringtone, also when disposed
+				lease -> AudioScheduler.getInstance().scheduleDirect(lease::release))
+				.doOnError(ex -> toast("Error playing ringtone Uri %s: %s", soundUri, ex.getLocalizedMessage()))
+				.subscribeOn(Schedulers.io());
+	}
+
+	/**
+	 * Shows a toast from the main thread, for playback running on threads without one
+	 */
+	private void toast(String format, Object... args) {
+		AndroidSchedulers.mainThread().scheduleDirect(() -> Utils.showToast(mContext, format, args));
+	}
+
+	/**
+	 * Completes once {@code ringtone} has been seen playing and has stopped, or if it is not seen
+	 * playing within {@link #RINGTONE_START_GRACE_MS}.
+	 */
+	private static Completable untilStopped(Ringtone ringtone) {
+		return Completable.defer(() -> {
+			// Only touched by the polls, which all run on the audio thread
+			boolean[] started = {false};
+			return Observable.interval(RINGTONE_POLL_MS, TimeUnit.MILLISECONDS, AudioScheduler.getInstance())
+					.filter(tick -> {
+						if (ringtone.isPlaying()) {
+							started[0] = true;
+							return false;
+						}
+
+						return started[0] || (tick + 1) * RINGTONE_POLL_MS >= RINGTONE_START_GRACE_MS;
+					})
+					.firstElement()
+					.ignoreElement();
+		});
 	}
 
+	/**
+	 * Posts the persistent notification immediately, e.g. before the service goes foreground.
+	 * Status updates should use {@link #update} instead.
+	 */
 	public Notification notify(String title, String description) {
 		if (Utils.isNullOrEmpty(title))
 			title = mContext.getString(R.string.app_name);
 		if (Utils.isNullOrEmpty(description))
 			description = mContext.getString(R.string.app_is_running);
 
-		mPersistentNotification = buildNotification(title, description)
-				.build();
-
 		Timber.d("Notifying with title \"%s\", description \"%s\"", title, description);
-		mNotificationManager.notify(PERSISTENT_NOTIFICATION_ID, mPersistentNotification);
+		return mNotificationUpdater.post(title, description);
+	}
+
+	/**
+	 * Updates the persistent notification if its content changed, coalescing bursts of updates
+	 * so it is posted at most once per NOTIFICATION_UPDATE_INTERVAL_MS. Cheap to call often.
+	 */
+	public void update(String title, String description) {
+		if (Utils.isNullOrEmpty(title))
+			title = mContext.getString(R.string.app_name);
+		if (Utils.isNullOrEmpty(description))
+			description = mContext.getString(R.string.app_is_running);
+
+		mNotificationUpdater.update(title, description);
+	}
 
-		return mPersistentNotification;
+	public String dumpNotificationUpdates() {
+		return mNotificationUpdater.dump();
 	}
 
-	private NotificationCompat.Builder buildNotification(String title, String description) {
+	/**
+	 * Creates the builder every post reuses; the content intent is created once with it.
+	 */
+	private NotificationCompat.Builder buildNotification() {
 		Intent intent = new Intent(mContext, MainActivity.class);
 		intent.setAction(Intent.ACTION_MAIN);
 		PendingIntent pendingIntent = PendingIntent.getActivity(mContext, 0, intent, 0);
 
 		NotificationCompat.Builder builder = new NotificationCompat.Builder(mContext, CHANNEL_ID)
 				.setColor(ContextCompat.getColor(mContext, R.color.notificationBar))
-				.setStyle(new NotificationCompat.BigTextStyle().bigText(description))
 				.setSmallIcon(android.R.drawable.ic_dialog_alert)
-				.setContentTitle(title)
-				.setContentText(description)
 				.setContentIntent(pendingIntent)
-				.setPriority(NotificationCompat.PRIORITY_HIGH);
+				.setPriority(NotificationCompat.PRIORITY_HIGH)
+				// Content updates don't sound or vibrate again
+				.setOnlyAlertOnce(true);
 
 		// Determines whether notification is affected by Do Not Disturb mode
 		if (Utils.isAtLeastL())
@@ -253,6 +297,8 @@ public class UserNotificationManager implements MediaPlayer.OnErrorListener,
 	}
 
 	public void cancelForegroundNotification() {
+		// A pending update would otherwise post it again
+		mNotificationUpdater.cancel();
 		if (mNotificationManager != null)
 			mNotificationManager.cancel(PERSISTENT_NOTIFICATION_ID);
 	}
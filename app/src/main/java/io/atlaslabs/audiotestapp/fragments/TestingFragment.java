@@ -60,7 +60,7 @@ public class TestingFragment extends Fragment implements
 		mViewModel = new MainViewModel(getActivity().getApplication());
 
 		binding.buttonNotify.setOnClickListener(view1 -> {
-			UserNotificationManager.getInstance().notify("Notification Update",
+			UserNotificationManager.getInstance().update("Notification Update",
 					String.format("Notification updated at %s", new Date()));
 		});
 
@@ -105,7 +105,9 @@ public class TestingFragment extends Fragment implements
 		super.onDestroyView();
 
 		// mViewModel.stopAlert();
+		// Does not wait for the playback thread; teardown finishes in the background
 		mViewModel.stopSoundTest();
+		mDisposable.dispose();
 
 		binding = null;
 	}
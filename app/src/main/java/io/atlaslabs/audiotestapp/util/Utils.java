@@ -1,6 +1,7 @@
 package io.atlaslabs.audiotestapp.util;
 
 import android.content.Context;
+import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Build;
 import android.widget.Toast;
@@ -35,6 +36,18 @@ public class Utils {
 		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
 	}
 
+	public static boolean isAtLeastN() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+	}
+
+	public static boolean isAtLeastP() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P;
+	}
+
+	public static boolean isAtLeastR() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+	}
+
 	/**
 	 * Returns true if contents at URI exist
 	 * @param uri
@@ -54,6 +67,26 @@ public class Utils {
 		return false;
 	}
 
+	/**
+	 * Returns the playback duration of the media at {@code uri} in milliseconds, or 0 if unknown
+	 */
+	public static long getMediaDurationMs(Context context, Uri uri) {
+		MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+		try {
+			retriever.setDataSource(context, uri);
+			String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+			return duration != null ? Long.parseLong(duration) : 0;
+		} catch (Exception ex) {
+			Timber.e(ex, "Error reading duration of Uri %s: %s", uri, ex.getLocalizedMessage());
+			return 0;
+		} finally {
+			try {
+				retriever.release();
+			} catch (Exception ignored) {
+			}
+		}
+	}
+
 	public static void showToast(Context context, String format, Object... args) {
 		String message = String.format(Locale.getDefault(), format, args);
 